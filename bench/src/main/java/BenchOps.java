@@ -0,0 +1,159 @@
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * The operations the benchmarks in {@code benchmarks} measure, each prepared from a
+ * {@link WorkloadGenerator} seed and returned as a {@code Supplier} that runs it once. JMH only runs
+ * benchmarks declared in a named package, and code in a named package cannot refer to the classes
+ * of the default package, so the benchmarks look these factories up by name and call the
+ * suppliers, which the JIT inlines.
+ */
+public final class BenchOps {
+
+    private BenchOps() {
+    }
+
+    /** Serializes a transaction, dropping the memoized encoding first */
+    public static Supplier<Object> rawTx(long seed, int inputs, int outputs) {
+        Transaction tx = transaction(seed, inputs, outputs);
+        byte[] signature = tx.getInput(0).signature;
+        return () -> {
+            tx.addSignature(signature, 0);
+            return tx.getRawTx();
+        };
+    }
+
+    /** Serializes and hashes a transaction, dropping the memoized encoding first */
+    public static Supplier<Object> finalizeTx(long seed, int inputs, int outputs) {
+        Transaction tx = transaction(seed, inputs, outputs);
+        byte[] signature = tx.getInput(0).signature;
+        return () -> {
+            tx.addSignature(signature, 0);
+            tx.finalize();
+            return tx.getHash();
+        };
+    }
+
+    /** Verifies the signature of a one input transaction */
+    public static Supplier<Object> verifySignature(long seed) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        WorkloadGenerator.Ledger ledger = gen.ledger(1, Amounts.COIN);
+        Transaction tx = gen.spend(ledger, 0, 1, 1);
+        PublicKey key = ledger.outputs.get(0).address;
+        byte[] message = tx.getRawDataToSign(0);
+        byte[] signature = tx.getInput(0).signature;
+        return () -> Crypto.verifySignature(key, message, signature);
+    }
+
+    /** Checks a transaction with no signature cache */
+    public static Supplier<Object> isValidTx(long seed, int inputs, int outputs) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        WorkloadGenerator.Ledger ledger = gen.ledger(inputs, Amounts.COIN);
+        Transaction tx = gen.spend(ledger, 0, inputs, outputs);
+        TxHandler handler = new TxHandler(ledger.getPool(), null, null);
+        return () -> handler.isValidTx(tx);
+    }
+
+    /**
+     * Runs {@code handleTxs} over {@code count} independent transactions with no signature cache,
+     * on the common pool if {@code parallel} is set
+     */
+    public static Supplier<Object> handleTxs(long seed, int count, int inputs, int outputs, boolean parallel) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        WorkloadGenerator.Ledger ledger = gen.ledger(count * inputs, Amounts.COIN);
+        Transaction[] txs = gen.independentTxs(ledger, count, inputs, outputs);
+        UTXOPool pool = ledger.getPool();
+        ForkJoinPool verifier = parallel ? ForkJoinPool.commonPool() : null;
+        return () -> new TxHandler(pool, verifier, null).handleTxs(txs);
+    }
+
+    /** Copies a UTXO pool of {@code size} entries and adds one entry to the copy */
+    public static Supplier<Object> utxoCopy(long seed, int size) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed, 1);
+        UTXOPool pool = gen.ledger(size, Amounts.COIN).getPool();
+        WorkloadGenerator.Ledger extra = gen.ledger(1, Amounts.COIN);
+        UTXO utxo = extra.getUtxos().get(0);
+        Transaction.Output out = extra.outputs.get(0);
+        return () -> {
+            UTXOPool copy = new UTXOPool(pool);
+            copy.addUTXO(utxo, out);
+            return copy;
+        };
+    }
+
+    /**
+     * Looks up the entries of a UTXO pool of {@code size} entries in turn, or as many keys that are
+     * not in it if {@code hit} is not set
+     */
+    public static Supplier<Object> utxoLookup(long seed, int size, boolean hit) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed, 1);
+        WorkloadGenerator.Ledger ledger = gen.ledger(size, Amounts.COIN);
+        List<UTXO> keys = hit ? ledger.getUtxos() : gen.ledger(Math.min(size, 1 << 16), Amounts.COIN).getUtxos();
+        UTXOPool pool = ledger.getPool();
+        byte[][] hashes = new byte[keys.size()][];
+        int[] indices = new int[keys.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = keys.get(i).getTxHash();
+            indices[i] = keys.get(i).getIndex();
+        }
+        int[] next = new int[1];
+        return () -> {
+            int i = next[0];
+            next[0] = i + 1 == hashes.length ? 0 : i + 1;
+            return pool.getTxOutput(hashes[i], indices[i]);
+        };
+    }
+
+    /**
+     * Adds the blocks of a chain of {@code length} blocks of {@code txsPerBlock} transactions one
+     * per call, pruning as it goes; past the last block the chain starts over from its genesis
+     * block with an empty signature cache
+     */
+    public static Supplier<Object> addBlock(long seed, int length, int txsPerBlock) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        Block genesis = gen.genesis();
+        List<Block> blocks = gen.chain(genesis, length, txsPerBlock);
+        Object[] state = { new BlockChain(genesis), 0 };
+        return () -> {
+            int next = (Integer) state[1];
+            if (next == blocks.size()) {
+                SignatureCache.getDefault().clear();
+                state[0] = new BlockChain(genesis);
+                next = 0;
+            }
+            state[1] = next + 1;
+            return ((BlockChain) state[0]).addBlock(blocks.get(next));
+        };
+    }
+
+    /**
+     * Prepares a chain whose pool holds {@code poolSize} transactions, each spending its own output
+     * at the tip; every supplier it returns creates one block over it, picking at most
+     * {@code maxTxs} transactions by fee rate if {@code maxTxs} is positive and taking the whole pool
+     * otherwise. A chain can only create one block, so each call of the outer supplier prepares a
+     * new one.
+     */
+    public static Supplier<Supplier<Object>> createBlock(long seed, int poolSize, int maxTxs) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        Block genesis = gen.genesis();
+        List<Block> blocks = gen.chain(genesis, 2, poolSize);
+        PublicKey miner = gen.key(2).getPublic();
+        return () -> {
+            BlockChain chain = new BlockChain(genesis);
+            chain.addBlock(blocks.get(0));
+            BlockHandler handler = new BlockHandler(chain);
+            for (Transaction tx : blocks.get(1).getTransactions())
+                handler.processTx(tx);
+            if (maxTxs > 0)
+                return () -> handler.createBlock(miner, maxTxs, Long.MAX_VALUE);
+            return () -> handler.createBlock(miner);
+        };
+    }
+
+    private static Transaction transaction(long seed, int inputs, int outputs) {
+        WorkloadGenerator gen = new WorkloadGenerator(seed);
+        return gen.spend(gen.ledger(inputs, Amounts.COIN), 0, inputs, outputs);
+    }
+}
@@ -0,0 +1,202 @@
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic transactions, UTXO sets and chains for the benchmarks. Everything is derived from a
+ * seed, keys included, so two runs with the same seed, on any commit, measure the same workload.
+ *
+ * <p>
+ * Coinbases paying the same key have the same hash, so chains built here fund their transactions
+ * from a single split of the genesis coinbase and rotate the miners only for variety.
+ */
+public class WorkloadGenerator {
+
+    public static final int KEY_SIZE = 2048;
+    public static final int DEFAULT_KEYS = 8;
+
+    /** A set of outputs to spend, with the owner of each */
+    public static final class Ledger {
+        final UTXOPool pool = new UTXOPool();
+        final List<UTXO> utxos = new ArrayList<UTXO>();
+        final List<Transaction.Output> outputs = new ArrayList<Transaction.Output>();
+        final List<KeyPair> owners = new ArrayList<KeyPair>();
+
+        public UTXOPool getPool() {
+            return pool;
+        }
+
+        public List<UTXO> getUtxos() {
+            return utxos;
+        }
+
+        public int size() {
+            return utxos.size();
+        }
+
+        void add(UTXO utxo, Transaction.Output out, KeyPair owner) {
+            pool.addUTXO(utxo, out);
+            utxos.add(utxo);
+            outputs.add(out);
+            owners.add(owner);
+        }
+    }
+
+    private final Random random;
+    private final KeyPair[] keys;
+
+    public WorkloadGenerator(long seed) {
+        this(seed, DEFAULT_KEYS);
+    }
+
+    /** Creates a generator whose outputs are paid to {@code numKeys} keys derived from {@code seed} */
+    public WorkloadGenerator(long seed, int numKeys) {
+        random = new Random(seed);
+        keys = new KeyPair[numKeys];
+        try {
+            for (int i = 0; i < numKeys; i++) {
+                SecureRandom keyRandom = SecureRandom.getInstance("SHA1PRNG");
+                keyRandom.setSeed(seed * 31 + i);
+                KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+                kpg.initialize(KEY_SIZE, keyRandom);
+                keys[i] = kpg.generateKeyPair();
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public KeyPair key(int i) {
+        return keys[i % keys.length];
+    }
+
+    /**
+     * @return a ledger of {@code size} outputs of {@code value} each, created by made-up funding
+     *         transactions of up to 16 outputs with random hashes
+     */
+    public Ledger ledger(int size, long value) {
+        Ledger ledger = new Ledger();
+        int owner = 0;
+        while (ledger.size() < size) {
+            Transaction funding = new Transaction();
+            int outputs = Math.min(16, size - ledger.size());
+            for (int j = 0; j < outputs; j++)
+                funding.addOutput(value, key(owner + j).getPublic());
+            byte[] hash = new byte[UTXO.HASH_LENGTH];
+            random.nextBytes(hash);
+            funding.setHash(hash);
+            for (int j = 0; j < outputs; j++)
+                ledger.add(new UTXO(hash, j), funding.getOutput(j), key(owner + j));
+            owner += outputs;
+        }
+        return ledger;
+    }
+
+    /**
+     * @return a signed transaction spending the {@code inputs} outputs of {@code ledger} from index
+     *         {@code first} on into {@code outputs} outputs, paying a fee of one unit
+     */
+    public Transaction spend(Ledger ledger, int first, int inputs, int outputs) {
+        long total = 0;
+        Transaction tx = new Transaction();
+        KeyPair[] signers = new KeyPair[inputs];
+        for (int i = 0; i < inputs; i++) {
+            UTXO utxo = ledger.utxos.get(first + i);
+            tx.addInput(utxo.getTxHash(), utxo.getIndex());
+            total += ledger.outputs.get(first + i).value;
+            signers[i] = ledger.owners.get(first + i);
+        }
+        long each = (total - 1) / outputs;
+        for (int j = 0; j < outputs; j++)
+            tx.addOutput(each, key(random.nextInt(keys.length)).getPublic());
+        for (int i = 0; i < inputs; i++)
+            tx.addSignature(sign(signers[i].getPrivate(), tx.getRawDataToSign(i)), i);
+        tx.finalize();
+        return tx;
+    }
+
+    /**
+     * @return {@code count} transactions of {@code inputs} inputs and {@code outputs} outputs each,
+     *         spending disjoint outputs of {@code ledger}
+     */
+    public Transaction[] independentTxs(Ledger ledger, int count, int inputs, int outputs) {
+        Transaction[] txs = new Transaction[count];
+        for (int i = 0; i < count; i++)
+            txs[i] = spend(ledger, i * inputs, inputs, outputs);
+        return txs;
+    }
+
+    /** @return a genesis block paying the first key */
+    public Block genesis() {
+        Block genesis = new Block(null, key(0).getPublic());
+        genesis.finalize();
+        return genesis;
+    }
+
+    /**
+     * @return {@code length} blocks following {@code genesis}: the first splits the genesis coinbase
+     *         into {@code txsPerBlock} outputs, every later one holds {@code txsPerBlock}
+     *         transactions each passing one of those outputs on to a new owner
+     */
+    public List<Block> chain(Block genesis, int length, int txsPerBlock) {
+        List<Block> blocks = new ArrayList<Block>();
+        Transaction coinbase = genesis.getCoinbase();
+        Transaction split = new Transaction();
+        split.addInput(coinbase.getHash(), 0);
+        long each = coinbase.getOutput(0).value / txsPerBlock;
+        int[] owners = new int[txsPerBlock];
+        for (int j = 0; j < txsPerBlock; j++) {
+            owners[j] = random.nextInt(keys.length);
+            split.addOutput(each, key(owners[j]).getPublic());
+        }
+        split.addSignature(sign(key(0).getPrivate(), split.getRawDataToSign(0)), 0);
+        split.finalize();
+
+        Block block = new Block(genesis.getHash(), key(1).getPublic());
+        block.addTransaction(split);
+        block.finalize();
+        blocks.add(block);
+
+        Transaction[] tips = new Transaction[txsPerBlock];
+        int[] tipIndex = new int[txsPerBlock];
+        for (int j = 0; j < txsPerBlock; j++) {
+            tips[j] = split;
+            tipIndex[j] = j;
+        }
+        for (int b = 1; b < length; b++) {
+            block = new Block(block.getHash(), key(b + 1).getPublic());
+            for (int j = 0; j < txsPerBlock; j++) {
+                Transaction tx = new Transaction();
+                tx.addInput(tips[j].getHash(), tipIndex[j]);
+                int to = random.nextInt(keys.length);
+                tx.addOutput(tips[j].getOutput(tipIndex[j]).value, key(to).getPublic());
+                tx.addSignature(sign(key(owners[j]).getPrivate(), tx.getRawDataToSign(0)), 0);
+                tx.finalize();
+                block.addTransaction(tx);
+                tips[j] = tx;
+                tipIndex[j] = 0;
+                owners[j] = to;
+            }
+            block.finalize();
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private static byte[] sign(PrivateKey key, byte[] message) {
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(key);
+            sig.update(message);
+            return sig.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
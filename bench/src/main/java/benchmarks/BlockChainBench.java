@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding blocks to a chain, including pruning the blocks that fall out of the cut-off window, with
+ * every signature verified once
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockChainBench {
+
+    /** blocks added before the chain starts over; a multiple of the cut-off age */
+    @Param({ "100" })
+    int length;
+
+    @Param({ "10", "100" })
+    int txsPerBlock;
+
+    private Supplier<Object> addBlock;
+
+    @Setup
+    public void setUp() {
+        addBlock = Ops.get("addBlock", Seeds.SEED, length, txsPerBlock);
+    }
+
+    @Benchmark
+    public Object addBlock() {
+        return addBlock.get();
+    }
+}
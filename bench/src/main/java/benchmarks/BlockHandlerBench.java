@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creating a block from a large transaction pool, either taking the whole pool or picking by fee
+ * rate. Creating a block consumes the chain, so every call gets a fresh one, prepared outside the
+ * measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class BlockHandlerBench {
+
+    @Param({ "1000", "10000" })
+    int poolSize;
+
+    /** the most transactions to pick by fee rate, or 0 to take the whole pool */
+    @Param({ "0", "500" })
+    int maxTxs;
+
+    private Supplier<Supplier<Object>> prepare;
+    private Supplier<Object> createBlock;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        prepare = Ops.get("createBlock", Seeds.SEED, poolSize, maxTxs);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        createBlock = prepare.get();
+    }
+
+    @Benchmark
+    public Object createBlock() {
+        return createBlock.get();
+    }
+}
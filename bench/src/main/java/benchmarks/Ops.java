@@ -0,0 +1,28 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/** Looks up the factories of the default package {@code BenchOps} class by name */
+final class Ops {
+
+    private Ops() {
+    }
+
+    /** @return the result of calling the factory {@code name} with {@code args} */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> get(String name, Object... args) {
+        try {
+            for (Method m : Class.forName("BenchOps").getMethods()) {
+                if (m.getName().equals(name))
+                    return (Supplier<T>) m.invoke(null, args);
+            }
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        throw new IllegalArgumentException("no operation " + name);
+    }
+}
@@ -0,0 +1,10 @@
+package benchmarks;
+
+/** The workload seed, the same for every benchmark so that results compare across commits */
+final class Seeds {
+
+    static final long SEED = Long.getLong("bench.seed", 20210620L);
+
+    private Seeds() {
+    }
+}
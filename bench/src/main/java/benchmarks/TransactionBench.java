@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Serializing and hashing a transaction whose encodings are not memoized yet */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBench {
+
+    @Param({ "1", "4", "16" })
+    int inputs;
+
+    @Param({ "1", "4", "16" })
+    int outputs;
+
+    private Supplier<Object> rawTx;
+    private Supplier<Object> finalizeTx;
+
+    @Setup
+    public void setUp() {
+        rawTx = Ops.get("rawTx", Seeds.SEED, inputs, outputs);
+        finalizeTx = Ops.get("finalizeTx", Seeds.SEED, inputs, outputs);
+    }
+
+    @Benchmark
+    public Object getRawTx() {
+        return rawTx.get();
+    }
+
+    @Benchmark
+    public Object finalizeTx() {
+        return finalizeTx.get();
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Checking transactions without a signature cache, one at a time and in epochs */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TxHandlerBench {
+
+    @Param({ "1", "4", "16" })
+    int inputs;
+
+    @Param({ "1", "4", "16" })
+    int outputs;
+
+    /** transactions per {@code handleTxs} epoch */
+    @Param({ "100" })
+    int txs;
+
+    private Supplier<Object> isValidTx;
+    private Supplier<Object> handleTxs;
+    private Supplier<Object> handleTxsParallel;
+
+    @Setup
+    public void setUp() {
+        isValidTx = Ops.get("isValidTx", Seeds.SEED, inputs, outputs);
+        handleTxs = Ops.get("handleTxs", Seeds.SEED, txs, inputs, outputs, false);
+        handleTxsParallel = Ops.get("handleTxs", Seeds.SEED, txs, inputs, outputs, true);
+    }
+
+    @Benchmark
+    public Object isValidTx() {
+        return isValidTx.get();
+    }
+
+    @Benchmark
+    public Object handleTxs() {
+        return handleTxs.get();
+    }
+
+    @Benchmark
+    public Object handleTxsParallel() {
+        return handleTxsParallel.get();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Copying and looking up UTXO pools from a thousand to ten million entries */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class UTXOPoolBench {
+
+    @Param({ "1000", "100000", "10000000" })
+    int size;
+
+    private Supplier<Object> copy;
+    private Supplier<Object> hit;
+    private Supplier<Object> miss;
+
+    @Setup
+    public void setUp() {
+        copy = Ops.get("utxoCopy", Seeds.SEED, size);
+        hit = Ops.get("utxoLookup", Seeds.SEED, size, true);
+        miss = Ops.get("utxoLookup", Seeds.SEED + 1, size, false);
+    }
+
+    /** a copy followed by one write, which is when the copy pays for what it shares */
+    @Benchmark
+    public Object copyAndAdd() {
+        return copy.get();
+    }
+
+    @Benchmark
+    public Object lookupHit() {
+        return hit.get();
+    }
+
+    @Benchmark
+    public Object lookupMiss() {
+        return miss.get();
+    }
+}
@@ -0,0 +1,78 @@
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+public class Block {
+
+    /** reward of the coinbase transaction, 25 coins */
+    public static final long COINBASE = 25 * Amounts.COIN;
+
+    private byte[] hash;
+    private byte[] prevBlockHash;
+    private Transaction coinbase;
+    private ArrayList<Transaction> txs;
+
+    /** {@code address} is the address to which the coinbase transaction would go */
+    public Block(byte[] prevHash, PublicKey address) {
+        prevBlockHash = prevHash;
+        coinbase = new Transaction(COINBASE, address);
+        txs = new ArrayList<Transaction>();
+    }
+
+    public Transaction getCoinbase() {
+        return coinbase;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte[] getPrevBlockHash() {
+        return prevBlockHash;
+    }
+
+    public ArrayList<Transaction> getTransactions() {
+        return txs;
+    }
+
+    public Transaction getTransaction(int index) {
+        return txs.get(index);
+    }
+
+    public void addTransaction(Transaction tx) {
+        txs.add(tx);
+    }
+
+    /** @return prevBlockHash, then the raw tx of every transaction (the coinbase excluded) */
+    public byte[] getRawBlock() {
+        ByteBuffer rawBlock = ByteBuffer.allocate(rawBlockSize());
+        if (prevBlockHash != null)
+            rawBlock.put(prevBlockHash);
+        for (Transaction tx : txs)
+            rawBlock.put(tx.rawTx());
+        return rawBlock.array();
+    }
+
+    /**
+     * @return the length of {@link #getRawBlock()}. The block encodings use the raw tx that every
+     *         transaction memoizes, so they only serialize transactions that changed.
+     */
+    int rawBlockSize() {
+        int size = prevBlockHash == null ? 0 : prevBlockHash.length;
+        for (Transaction tx : txs)
+            size += tx.rawTx().length;
+        return size;
+    }
+
+    /** Hashes {@link #getRawBlock()} without building it */
+    public void finalize() {
+        MessageDigest md = Crypto.sha256();
+        if (prevBlockHash != null)
+            md.update(prevBlockHash);
+        for (Transaction tx : txs)
+            TxSerializer.digestRawTx(tx, md);
+        hash = md.digest();
+    }
+}
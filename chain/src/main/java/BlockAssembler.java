@@ -0,0 +1,361 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Picks the transactions of a new block by fee rate. Each pool transaction is scored together with
+ * its unconfirmed ancestors in the {@code TransactionPool} (its package): the score is the total
+ * fee of the package over its total raw size, so a high fee child pulls in a low fee parent.
+ *
+ * <p>
+ * The assembler listens to the pool and keeps every transaction in an ordered index by package
+ * score, updating only the transaction and its descendants when something enters or leaves the
+ * pool. Building a template walks that index best first and never re-sorts the pool.
+ *
+ * <p>
+ * The index is guarded by the assembler's monitor. Building a template holds it only while picking
+ * the transactions; validating them runs without it, so pool updates are not held up meanwhile.
+ */
+public class BlockAssembler implements TransactionPool.Listener {
+
+    private static final class Entry {
+        final Transaction tx;
+        final ByteArrayWrapper hash;
+        final long seq;
+        final long size;
+        /** fee of the transaction alone, {@code UNKNOWN} while some input cannot be found */
+        long fee = UNKNOWN;
+        final Set<Entry> parents = newIdentitySet();
+        final Set<Entry> children = newIdentitySet();
+        Set<Entry> ancestors = newIdentitySet();
+        long ancestorFee;
+        long ancestorSize;
+        /** true if this entry and all its ancestors have a known fee, i.e. it is in the index */
+        boolean ready;
+
+        Entry(Transaction tx, long seq) {
+            this.tx = tx;
+            this.hash = new ByteArrayWrapper(tx.getHash());
+            this.seq = seq;
+            this.size = Math.max(1, tx.rawTx().length);
+        }
+    }
+
+    /** a package whose score changed because some of its ancestors are already in the block */
+    private static final class Modified {
+        final Entry entry;
+        long fee;
+        long size;
+
+        Modified(Entry entry) {
+            this.entry = entry;
+            this.fee = entry.ancestorFee;
+            this.size = entry.ancestorSize;
+        }
+    }
+
+    /** fee of an entry some of whose inputs are missing */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final Comparator<Entry> BY_SCORE = (a, b) -> {
+        int c = compareScore(a.ancestorFee, a.ancestorSize, b.ancestorFee, b.ancestorSize);
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    };
+
+    private static final Comparator<Modified> MODIFIED_BY_SCORE = (a, b) -> {
+        int c = compareScore(a.fee, a.size, b.fee, b.size);
+        return c != 0 ? c : Long.compare(a.entry.seq, b.entry.seq);
+    };
+
+    private final BlockChain blockChain;
+    private final HashMap<ByteArrayWrapper, Entry> byHash = new HashMap<ByteArrayWrapper, Entry>();
+    /** entries by the hash of a transaction they spend from, whether that one is in the pool or not */
+    private final HashMap<ByteArrayWrapper, List<Entry>> spenders = new HashMap<ByteArrayWrapper, List<Entry>>();
+    private final TreeSet<Entry> byScore = new TreeSet<Entry>(BY_SCORE);
+    private final Set<Entry> unresolved = newIdentitySet();
+    private long nextSeq;
+
+    /**
+     * Creates an assembler for the transaction pool of {@code blockChain}, indexing the transactions
+     * already in it, and keeps it up to date from then on
+     */
+    public BlockAssembler(BlockChain blockChain) {
+        this.blockChain = blockChain;
+        TransactionPool txPool = blockChain.getTransactionPool();
+        synchronized (txPool) {
+            for (Transaction tx : txPool.getTransactions())
+                transactionAdded(tx);
+            txPool.addListener(this);
+        }
+    }
+
+    /**
+     * Builds a template over {@code utxoPool} of at most {@code maxTxs} transactions and
+     * {@code maxBytes} raw bytes, taking packages in order of fee rate. The selection is validated
+     * like any other template, so pool transactions that turn out invalid or conflicting are
+     * reported there and leave their slot unused.
+     */
+    public BlockTemplate buildTemplate(UTXOPool utxoPool, int maxTxs, long maxBytes, ForkJoinPool verifier) {
+        return BlockTemplate.build(utxoPool, select(utxoPool, maxTxs, maxBytes), verifier);
+    }
+
+    /** @return the transactions of the packages picked for a template, parents first */
+    private synchronized List<Transaction> select(UTXOPool utxoPool, int maxTxs, long maxBytes) {
+        resolvePending(utxoPool);
+
+        Set<Entry> included = newIdentitySet();
+        IdentityHashMap<Entry, Modified> modifiedByEntry = new IdentityHashMap<Entry, Modified>();
+        TreeSet<Modified> modified = new TreeSet<Modified>(MODIFIED_BY_SCORE);
+        List<Transaction> selected = new ArrayList<Transaction>();
+        long bytes = 0;
+
+        Iterator<Entry> base = byScore.iterator();
+        Entry nextBase = nextBase(base, included, modifiedByEntry);
+        while (selected.size() < maxTxs && bytes < maxBytes) {
+            Modified bestModified = modified.isEmpty() ? null : modified.first();
+            Entry pick;
+            if (bestModified != null && (nextBase == null || compareScore(bestModified.fee, bestModified.size,
+                    nextBase.ancestorFee, nextBase.ancestorSize) <= 0)) {
+                pick = bestModified.entry;
+                modified.remove(bestModified);
+                modifiedByEntry.remove(pick);
+            } else if (nextBase != null) {
+                pick = nextBase;
+                nextBase = nextBase(base, included, modifiedByEntry);
+            } else {
+                break;
+            }
+
+            List<Entry> pkg = new ArrayList<Entry>();
+            long pkgSize = 0;
+            for (Entry a : pick.ancestors) {
+                if (!included.contains(a)) {
+                    pkg.add(a);
+                    pkgSize += a.size;
+                }
+            }
+            pkg.add(pick);
+            pkgSize += pick.size;
+            if (selected.size() + pkg.size() > maxTxs || bytes + pkgSize > maxBytes)
+                continue;
+
+            // ancestors have strictly fewer ancestors than their descendants
+            pkg.sort(Comparator.comparingInt(e -> e.ancestors.size()));
+            for (Entry e : pkg) {
+                included.add(e);
+                selected.add(e.tx);
+                Modified m = modifiedByEntry.remove(e);
+                if (m != null)
+                    modified.remove(m);
+            }
+            bytes += pkgSize;
+
+            for (Entry e : pkg) {
+                for (Entry d : descendants(e)) {
+                    if (included.contains(d) || !d.ready)
+                        continue;
+                    Modified m = modifiedByEntry.get(d);
+                    if (m == null) {
+                        m = new Modified(d);
+                        modifiedByEntry.put(d, m);
+                    } else {
+                        modified.remove(m);
+                    }
+                    m.fee = Amounts.saturatedAdd(m.fee, -e.fee);
+                    m.size -= e.size;
+                    modified.add(m);
+                }
+            }
+            if (nextBase != null && (included.contains(nextBase) || modifiedByEntry.containsKey(nextBase)))
+                nextBase = nextBase(base, included, modifiedByEntry);
+        }
+        return selected;
+    }
+
+    @Override
+    public synchronized void transactionAdded(Transaction tx) {
+        Entry e = new Entry(tx, nextSeq++);
+        byHash.put(e.hash, e);
+
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxHash == null)
+                continue;
+            ByteArrayWrapper prev = new ByteArrayWrapper(in.prevTxHash);
+            spenders.computeIfAbsent(prev, k -> new ArrayList<Entry>()).add(e);
+            Entry parent = byHash.get(prev);
+            if (parent != null && parent != e) {
+                e.parents.add(parent);
+                parent.children.add(e);
+            }
+        }
+        List<Entry> waiting = spenders.get(e.hash);
+        if (waiting != null) {
+            for (Entry child : waiting) {
+                if (child != e) {
+                    child.parents.add(e);
+                    e.children.add(child);
+                }
+            }
+        }
+
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        resolveFee(e, utxoPool);
+        refresh(e);
+        for (Entry d : descendants(e)) {
+            if (d.fee == UNKNOWN)
+                resolveFee(d, utxoPool);
+            refresh(d);
+        }
+    }
+
+    @Override
+    public synchronized void transactionRemoved(Transaction tx) {
+        Entry e = byHash.get(new ByteArrayWrapper(tx.getHash()));
+        if (e == null || e.tx != tx)
+            return;
+        List<Entry> order = descendants(e);
+        byHash.remove(e.hash);
+        unresolved.remove(e);
+        if (e.ready)
+            byScore.remove(e);
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxHash == null)
+                continue;
+            ByteArrayWrapper prev = new ByteArrayWrapper(in.prevTxHash);
+            List<Entry> list = spenders.get(prev);
+            if (list != null) {
+                list.remove(e);
+                if (list.isEmpty())
+                    spenders.remove(prev);
+            }
+        }
+        for (Entry parent : e.parents)
+            parent.children.remove(e);
+        for (Entry child : e.children)
+            child.parents.remove(e);
+        // descendants of a confirmed transaction keep their fee, their inputs are now confirmed
+        for (Entry d : order)
+            refresh(d);
+    }
+
+    /** retries the fee of entries whose inputs were missing, as the tip may have moved since */
+    private void resolvePending(UTXOPool utxoPool) {
+        for (Entry e : new ArrayList<Entry>(unresolved)) {
+            resolveFee(e, utxoPool);
+            if (e.fee != UNKNOWN) {
+                refresh(e);
+                for (Entry d : descendants(e))
+                    refresh(d);
+            }
+        }
+    }
+
+    private void resolveFee(Entry e, UTXOPool utxoPool) {
+        long inputSum = 0;
+        for (Transaction.Input in : e.tx.getInputs()) {
+            Transaction.Output spent = null;
+            if (in.prevTxHash != null) {
+                Entry parent = byHash.get(new ByteArrayWrapper(in.prevTxHash));
+                if (parent != null) {
+                    // getOutput only checks the upper bound
+                    if (in.outputIndex >= 0)
+                        spent = parent.tx.getOutput(in.outputIndex);
+                } else
+                    spent = utxoPool.getTxOutput(in.prevTxHash, in.outputIndex);
+            }
+            if (spent == null) {
+                e.fee = UNKNOWN;
+                unresolved.add(e);
+                return;
+            }
+            inputSum = Amounts.saturatedAdd(inputSum, spent.value);
+        }
+        long fee = inputSum;
+        for (Transaction.Output out : e.tx.getOutputs())
+            fee = Amounts.saturatedAdd(fee, -out.value);
+        // keep the sentinel for entries that are actually missing inputs
+        e.fee = fee == UNKNOWN ? UNKNOWN + 1 : fee;
+        unresolved.remove(e);
+    }
+
+    /** recomputes the package of {@code e} from its parents and moves it in the index */
+    private void refresh(Entry e) {
+        if (e.ready)
+            byScore.remove(e);
+        Set<Entry> ancestors = newIdentitySet();
+        boolean ready = e.fee != UNKNOWN;
+        for (Entry parent : e.parents) {
+            ancestors.add(parent);
+            ancestors.addAll(parent.ancestors);
+            ready &= parent.ready;
+        }
+        e.ancestors = ancestors;
+        e.ancestorFee = e.fee;
+        e.ancestorSize = e.size;
+        for (Entry a : ancestors) {
+            e.ancestorFee = Amounts.saturatedAdd(e.ancestorFee, a.fee);
+            e.ancestorSize += a.size;
+        }
+        e.ready = ready;
+        if (ready)
+            byScore.add(e);
+    }
+
+    /** @return the descendants of {@code e}, parents before children */
+    private static List<Entry> descendants(Entry e) {
+        Set<Entry> seen = newIdentitySet();
+        ArrayDeque<Entry> stack = new ArrayDeque<Entry>(e.children);
+        while (!stack.isEmpty()) {
+            Entry d = stack.pop();
+            if (seen.add(d))
+                stack.addAll(d.children);
+        }
+        IdentityHashMap<Entry, Integer> pendingParents = new IdentityHashMap<Entry, Integer>();
+        for (Entry d : seen) {
+            int count = 0;
+            for (Entry p : d.parents)
+                if (seen.contains(p))
+                    count++;
+            pendingParents.put(d, count);
+        }
+        List<Entry> order = new ArrayList<Entry>(seen.size());
+        ArrayDeque<Entry> ready = new ArrayDeque<Entry>();
+        for (Entry d : seen)
+            if (pendingParents.get(d) == 0)
+                ready.add(d);
+        while (!ready.isEmpty()) {
+            Entry d = ready.poll();
+            order.add(d);
+            for (Entry c : d.children)
+                if (pendingParents.merge(c, -1, Integer::sum) == 0)
+                    ready.add(c);
+        }
+        return order;
+    }
+
+    private static Entry nextBase(Iterator<Entry> base, Set<Entry> included, IdentityHashMap<Entry, Modified> modified) {
+        while (base.hasNext()) {
+            Entry e = base.next();
+            if (!included.contains(e) && !modified.containsKey(e))
+                return e;
+        }
+        return null;
+    }
+
+    /** orders by fee rate, highest first, without dividing */
+    private static int compareScore(long feeA, long sizeA, long feeB, long sizeB) {
+        return Amounts.compareRates(feeB, sizeB, feeA, sizeA);
+    }
+
+    private static Set<Entry> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+    }
+}
@@ -0,0 +1,695 @@
+// Block Chain should maintain only limited block nodes to satisfy the functions
+// You should not have all the blocks added to the block chain in memory 
+// as it would cause a memory overflow.
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Blocks are added one at a time under a commit lock that only block commits take. The max height
+ * block and its UTXO set are published together as a {@link Tip} after every commit, so readers and
+ * {@link #addTransaction(Transaction)}, which goes to the thread-safe transaction pool, never wait
+ * for a block being added; the pool is brought to the new tip in short steps.
+ *
+ * <p>
+ * Every chain records what it does in a {@link Metrics} registry, the shared one unless it is given
+ * another; {@link ChainMetrics} lists the names.
+ */
+public class BlockChain {
+    public static final int CUT_OFF_AGE = 10;
+    /** the number of transactions put back into the pool per hold of its monitor in a reorganization */
+    private static final int READMIT_BATCH = 64;
+    private final HashMap<ByteArrayWrapper, BlockNode> blockChain;
+    /**
+     * Block nodes bucketed by height: the nodes of height h are in {@code heights[h % heights.length]}.
+     * At most CUT_OFF_AGE heights are alive at a time, so buckets are reused as the chain grows.
+     */
+    private final HeightBucket[] heights = new HeightBucket[CUT_OFF_AGE + 1];
+    private BlockNode maxHeightNode;
+    /** the UTXO set at {@code maxHeightNode}; other blocks only keep their undo records */
+    private UTXOPool utxoPool;
+    /** {@code maxHeightNode} and {@code utxoPool} as last published, for readers on any thread */
+    private final AtomicReference<Tip> tip = new AtomicReference<>();
+    /** held while a block is added; guards every field that is not final or volatile */
+    private final Object commitLock = new Object();
+    private final TransactionPool txPool;
+    /** blocks waiting for their previous block; only added to under the commit lock */
+    private final OrphanBlockPool orphans = new OrphanBlockPool();
+    private volatile int oldestBlockHeight;
+    /** where accepted blocks and snapshots are written, or null to keep the chain in memory only */
+    private final BlockStore store;
+    /** set while the blocks of {@code store} are being added again on startup */
+    private boolean replaying;
+    /** the position in {@code store} of the block being replayed */
+    private long replayPosition;
+    private final ChainMetrics metrics;
+
+    /**
+     * What {@link #submitBlock(Block)} did with a block. The codes from {@code MALFORMED} on are the
+     * {@link ValidationResult} of the first transaction of the block that failed, so a block whose
+     * only fault is a {@code MISSING_INPUT} can be told from a forged one.
+     */
+    public enum Status {
+        /** added, to the main branch or to a side branch */
+        ACCEPTED,
+        /** has no previous block hash, like a genesis block */
+        GENESIS,
+        /**
+         * the previous block is not in memory: it was never added, or is older than CUT_OFF_AGE.
+         * The block waits in the orphan pool and is added as soon as the previous block is.
+         */
+        UNKNOWN_PARENT,
+        /** would be at a height of at most the max height minus CUT_OFF_AGE */
+        TOO_OLD,
+        /** its branch meets the main branch only below the oldest height kept in memory */
+        FORK_TOO_DEEP,
+        /** a transaction has no hash, or an input has no previous transaction hash */
+        MALFORMED,
+        /** a transaction has an output value that is not positive */
+        NEGATIVE_OUTPUT,
+        /** a transaction claims the same output twice */
+        DOUBLE_CLAIM,
+        /** a transaction claims an output that is not in the UTXO set of the parent block */
+        MISSING_INPUT,
+        /** a transaction creates more value than it claims */
+        INSUFFICIENT_INPUT,
+        /** an input is unsigned or its signature does not verify */
+        BAD_SIGNATURE;
+
+        private static final Status[] BY_RESULT = new Status[ValidationResult.values().length];
+
+        static {
+            for (ValidationResult r : ValidationResult.values()) {
+                BY_RESULT[r.ordinal()] = r.isValid() ? ACCEPTED : valueOf(r.name());
+            }
+        }
+
+        /** @return the status of a block whose first invalid transaction got {@code result} */
+        static Status of(ValidationResult result) {
+            return BY_RESULT[result.ordinal()];
+        }
+    }
+
+    /**
+     * The max height block and the UTXO set after it, as they were after some block was added.
+     * Neither changes once published.
+     */
+    public static final class Tip {
+        private final Block block;
+        private final int height;
+        private final UTXOPool utxoPool;
+
+        private Tip(Block block, int height, UTXOPool utxoPool) {
+            this.block = block;
+            this.height = height;
+            this.utxoPool = utxoPool;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /** @return a copy of the UTXO set after the block, which costs nothing up front */
+        public UTXOPool getUTXOPool() {
+            return new UTXOPool(utxoPool);
+        }
+    }
+
+    /**
+     * Private class of block node
+     */
+    private static class BlockNode {
+        public Block block;
+        public ByteArrayWrapper hash;
+        public int height;
+        public BlockUndo undo;
+        public BlockNode parent;
+        public ArrayList<BlockNode> children;
+        /** position of the block in the block store, or -1 */
+        public long position = -1;
+
+        // constructor
+        public BlockNode(Block block, BlockNode parent, BlockUndo undo) {
+            this.block = block;
+            this.hash = new ByteArrayWrapper(block.getHash());
+            this.parent = parent;
+            this.undo = undo;
+            this.children = new ArrayList<>();
+            if (this.parent == null) {
+                this.height = 1;
+            }
+            else {
+                this.height = this.parent.height + 1;
+                this.parent.children.add(this);
+            }
+        }
+
+        // constructor of a node whose parent is no longer in memory
+        public BlockNode(Block block, int height, BlockUndo undo) {
+            this(block, null, undo);
+            this.height = height;
+        }
+    }
+
+    /** The block nodes of one height, so that {@code heights} can be an array without raw types */
+    private static class HeightBucket {
+        final ArrayList<BlockNode> nodes = new ArrayList<>();
+    }
+
+    /**
+     * Create an empty block chain with just a genesis block. Assume {@code genesisBlock} is a valid
+     * block
+     */
+    public BlockChain(Block genesisBlock) {
+        // IMPLEMENT THIS
+        this(genesisBlock, Metrics.getDefault());
+    }
+
+    /** Create a block chain like {@link #BlockChain(Block)} that records its metrics in {@code metrics} */
+    public BlockChain(Block genesisBlock, Metrics metrics) {
+        blockChain = new HashMap<>();
+        txPool = new TransactionPool();
+        store = null;
+        this.metrics = new ChainMetrics(metrics);
+        watchTxPool();
+        startFrom(genesisBlock);
+    }
+
+    /**
+     * Create a block chain that writes every block it accepts to {@code store}, along with a
+     * snapshot of the UTXO set at the heights the store asks for. If {@code store} is empty the
+     * chain starts with just {@code genesisBlock}; otherwise it is rebuilt from the latest snapshot
+     * in the store (or from the genesis block if there is none yet), adding again only the blocks
+     * stored after it, so restarting takes time proportional to that tail.
+     *
+     * @throws IOException if the store cannot be read or written
+     * @throws IllegalArgumentException if the store holds a chain with another genesis block
+     */
+    public BlockChain(Block genesisBlock, BlockStore store) throws IOException {
+        this(genesisBlock, store, Metrics.getDefault());
+    }
+
+    /**
+     * Create a block chain like {@link #BlockChain(Block, BlockStore)} that records its metrics in
+     * {@code metrics}
+     */
+    public BlockChain(Block genesisBlock, BlockStore store, Metrics metrics) throws IOException {
+        blockChain = new HashMap<>();
+        txPool = new TransactionPool();
+        this.store = store;
+        this.metrics = new ChainMetrics(metrics);
+        watchTxPool();
+        if (store.isEmpty()) {
+            startFrom(genesisBlock);
+            maxHeightNode.position = store.append(genesisBlock);
+            return;
+        }
+
+        long position = store.firstPosition();
+        if (!Arrays.equals(store.read(position).getHash(), genesisBlock.getHash())) {
+            throw new IllegalArgumentException("the store holds a chain with another genesis block");
+        }
+        BlockStore.Snapshot snapshot = store.loadSnapshot();
+        if (snapshot == null) {
+            startFrom(genesisBlock);
+            maxHeightNode.position = position;
+        } else {
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = new HeightBucket();
+            }
+            utxoPool = snapshot.getUtxoPool();
+            position = snapshot.getPosition();
+            // the snapshot block is never disconnected, every block kept from now on descends from it
+            BlockNode root = new BlockNode(store.read(position), snapshot.getHeight(), new BlockUndo());
+            root.position = position;
+            addNode(root);
+            maxHeightNode = root;
+            oldestBlockHeight = root.height;
+            publishTip();
+        }
+
+        replaying = true;
+        try {
+            position = store.nextPosition(position);
+            while (position >= 0) {
+                replayPosition = position;
+                addBlock(store.read(position));
+                position = store.nextPosition(position);
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private void startFrom(Block genesisBlock) {
+        utxoPool = new UTXOPool();
+
+        // add coinbase utxos into utxoPool
+        BlockUndo undo = new BlockUndo();
+        undo.connect(genesisBlock.getCoinbase(), utxoPool);
+
+        // create a blockNode for genesisBlock
+        BlockNode genesisNode = new BlockNode(genesisBlock, null, undo);
+
+        // add the block into blockChain
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = new HeightBucket();
+        }
+        addNode(genesisNode);
+
+        // the maximum height block node
+        maxHeightNode = genesisNode;
+        oldestBlockHeight = 1;
+        publishTip();
+    }
+
+    private void publishTip() {
+        tip.set(new Tip(maxHeightNode.block, maxHeightNode.height, utxoPool));
+        metrics.height.set(maxHeightNode.height);
+        metrics.utxoSize.set(utxoPool.size());
+    }
+
+    /** Keeps the mempool size gauge up to date */
+    private void watchTxPool() {
+        txPool.addListener(new TransactionPool.Listener() {
+            @Override
+            public void transactionAdded(Transaction tx) {
+                metrics.mempoolSize.set(txPool.size());
+            }
+
+            @Override
+            public void transactionRemoved(Transaction tx) {
+                metrics.mempoolSize.set(txPool.size());
+            }
+        });
+    }
+
+    /** Get the maximum height block */
+    public Block getMaxHeightBlock() {
+        // IMPLEMENT THIS
+        return tip.get().block;
+    }
+
+    /**
+     * Get the UTXOPool for mining a new block on top of max height block. The pool is a copy, which
+     * costs nothing up front; changing it does not affect the block chain.
+     */
+    public UTXOPool getMaxHeightUTXOPool() {
+        // IMPLEMENT THIS
+        return tip.get().getUTXOPool();
+    }
+
+    /**
+     * Get the max height block together with the UTXO set after it; unlike calling
+     * {@link #getMaxHeightBlock()} and {@link #getMaxHeightUTXOPool()} in turn, both belong to the
+     * same tip even while blocks are being added.
+     */
+    public Tip getTip() {
+        return tip.get();
+    }
+
+    /** Get the blocks that are waiting for their previous block */
+    public OrphanBlockPool getOrphanPool() {
+        return orphans;
+    }
+
+    /** Get the transaction pool to mine a new block */
+    public TransactionPool getTransactionPool() {
+        // IMPLEMENT THIS
+        return txPool;
+    }
+
+    /**
+     * Get the height of oldest node
+     */
+    public int getOldestBlockHeight() {
+        return oldestBlockHeight;
+    }
+
+    /**
+     * Add {@code block} to the block chain if it is valid. For validity, all transactions should be
+     * valid and block should be at {@code height > (maxHeight - CUT_OFF_AGE)}.
+     * 
+     * <p>
+     * For example, you can try creating a new block over the genesis block (block height 2) if the
+     * block chain height is {@code <=
+     * CUT_OFF_AGE + 1}. As soon as {@code height > CUT_OFF_AGE + 1}, you cannot create a new block
+     * at height 2.
+     * 
+     * <p>
+     * A block whose previous block is unknown is kept in the orphan pool and added, along with the
+     * orphans waiting for it in turn, once its previous block is added.
+     *
+     * @return true if block is successfully added
+     */
+    public boolean addBlock(Block block) {
+        // IMPLEMENT THIS
+        return submitBlock(block) == Status.ACCEPTED;
+    }
+
+    /**
+     * Add {@code block} like {@link #addBlock(Block)}
+     *
+     * @return {@link Status#ACCEPTED} if the block was added, otherwise why it was not
+     */
+    public Status submitBlock(Block block) {
+        return addBlock(new BlockValidator(block, ForkJoinPool.commonPool(), SignatureCache.getDefault()));
+    }
+
+    /**
+     * Adds the block of {@code validator} like {@link #submitBlock(Block)}. Stages of the validator
+     * that already ran, as {@link BlockPipeline} does ahead of time, are not run again.
+     */
+    Status addBlock(BlockValidator validator) {
+        Status status = addOne(validator);
+        if (status == Status.ACCEPTED) {
+            connectOrphans(validator.getBlock());
+        }
+        metrics.orphans.set(orphans.size());
+        return status;
+    }
+
+    /**
+     * Adds the orphans waiting for {@code block}, then those waiting for them, and so on. Works
+     * through a queue rather than recursing, so a long run of orphans cannot overflow the stack.
+     */
+    private void connectOrphans(Block block) {
+        ArrayDeque<Block> parents = new ArrayDeque<>();
+        parents.add(block);
+        while (!parents.isEmpty()) {
+            for (Block child : orphans.removeChildren(parents.poll().getHash())) {
+                BlockValidator validator = new BlockValidator(child, ForkJoinPool.commonPool(),
+                        SignatureCache.getDefault());
+                if (addOne(validator) == Status.ACCEPTED) {
+                    metrics.orphansConnected.increment();
+                    parents.add(child);
+                }
+            }
+        }
+    }
+
+    private Status addOne(BlockValidator validator) {
+        long start = System.nanoTime();
+        Status status;
+        // this stage needs nothing from the chain, so it does not hold up other commits
+        ValidationResult structure = validator.checkStructure();
+        if (!structure.isValid()) {
+            status = Status.of(structure);
+        } else {
+            metrics.structure.recordSince(start);
+            synchronized (commitLock) {
+                status = commit(validator);
+            }
+        }
+        metrics.recordResult(status, start);
+        return status;
+    }
+
+    private Status commit(BlockValidator validator) {
+        long t = System.nanoTime();
+        Block block = validator.getBlock();
+
+        // get parent node
+        byte[] prevBlockHash = block.getPrevBlockHash();
+        if (prevBlockHash == null) {
+            // it is the genesis block
+            return Status.GENESIS;
+        }
+        ByteArrayWrapper wrappedPrevBlockHash = new ByteArrayWrapper(prevBlockHash);
+        BlockNode parent = this.blockChain.get(wrappedPrevBlockHash);
+        if (parent == null) {
+            // the parent node is null; keep the block until it comes. This happens under the commit
+            // lock, so the parent cannot be added in between without finding the block afterwards.
+            if (!replaying) {
+                orphans.addBlock(block);
+            }
+            return Status.UNKNOWN_PARENT;
+        }
+
+        // check for block height
+        if (parent.height + 1 <= maxHeightNode.height - CUT_OFF_AGE) {
+            return Status.TOO_OLD;
+        }
+        t = metrics.lookup.recordSince(t);
+
+        UTXOPool parentUtxoPool = utxoPoolAt(parent);
+        if (parentUtxoPool == null) {
+            // the fork point is no longer in memory
+            return Status.FORK_TOO_DEEP;
+        }
+
+        // apply the transactions to a copy of the parent's utxoPool, recording what changed, then
+        // check the signatures against the outputs they turned out to spend
+        UTXOPool newUtxoPool = new UTXOPool(parentUtxoPool);
+        BlockUndo undo = new BlockUndo();
+        t = metrics.utxoCopy.recordSince(t);
+        ValidationResult result = validator.connect(newUtxoPool, undo);
+        if (!result.isValid()) {
+            return Status.of(result);
+        }
+        t = metrics.validate.recordSince(t);
+        result = validator.verifySignatures();
+        if (!result.isValid()) {
+            return Status.of(result);
+        }
+        t = metrics.signatures.recordSince(t);
+        undo.connect(block.getCoinbase(), newUtxoPool);
+
+        // write the block out before it changes anything in memory
+        long position = -1;
+        if (replaying) {
+            position = replayPosition;
+        } else if (store != null) {
+            try {
+                position = store.append(block);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // add the block into blockChain
+        BlockNode newBlockNode = new BlockNode(block, parent, undo);
+        newBlockNode.position = position;
+        addNode(newBlockNode);
+
+        // update maxHeightNode; if the block is on a side branch, this is a reorganization
+        if (parent.height + 1 > maxHeightNode.height) {
+            BlockNode oldTip = maxHeightNode;
+            maxHeightNode = newBlockNode;
+            utxoPool = newUtxoPool;
+            publishTip();
+            updateTxPool(oldTip, newBlockNode);
+        }
+        t = metrics.commit.recordSince(t);
+
+        // Keep around the most recent blocks
+        // here the exact number of blocks to store is 10
+        while (oldestBlockHeight <= maxHeightNode.height - 9) {
+            if (store != null && !replaying && store.isSnapshotDue(oldestBlockHeight)) {
+                saveSnapshot(oldestBlockHeight);
+            }
+            evictHeight(oldestBlockHeight);
+            oldestBlockHeight++;
+        }
+        metrics.prune.recordSince(t);
+
+        return Status.ACCEPTED;
+    }
+
+    /**
+     * Computes the UTXO set at {@code node} from the one at {@code maxHeightNode}: the blocks of the
+     * main branch down to the fork point are disconnected using their undo records, then the blocks
+     * of {@code node}'s branch are reconnected. Takes time proportional to the size of those blocks.
+     *
+     * @return the UTXO set at {@code node}, or null if the two branches only meet below the oldest
+     *         height kept in memory
+     */
+    private UTXOPool utxoPoolAt(BlockNode node) {
+        if (node == maxHeightNode) {
+            return utxoPool;
+        }
+        UTXOPool pool = new UTXOPool(utxoPool);
+        ArrayList<BlockNode> toConnect = new ArrayList<>();
+        BlockNode main = maxHeightNode;
+        BlockNode side = node;
+        BlockNode mainRoot = null;
+        BlockNode sideRoot = null;
+        while (main != side) {
+            if (main != null && (side == null || main.height >= side.height)) {
+                main.undo.disconnect(pool);
+                mainRoot = main;
+                main = main.parent;
+            } else {
+                toConnect.add(side);
+                sideRoot = side;
+                side = side.parent;
+            }
+            if (main == null && side == null) {
+                // both branches start at the oldest height kept, so they meet only if their first
+                // blocks have the same (evicted) parent
+                if (!Arrays.equals(mainRoot.block.getPrevBlockHash(), sideRoot.block.getPrevBlockHash())) {
+                    return null;
+                }
+                break;
+            }
+        }
+        for (int i = toConnect.size() - 1; i >= 0; i--) {
+            toConnect.get(i).undo.reconnect(pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Brings the transaction pool from the tip {@code oldTip} to {@code newTip}, touching only the
+     * blocks between them and their fork point. Transactions of blocks that left the main branch
+     * go back into the pool, parents first; transactions of blocks that joined it are removed along
+     * with the pool transactions conflicting with them; pool transactions spending an output that
+     * only the old branch had, a coinbase or an output of a transaction the pool turned down, are
+     * removed with their descendants; transactions waiting for an output the new branch confirmed
+     * are added. Blocks on a side branch leave the pool alone.
+     *
+     * <p>
+     * Every step takes the pool's monitor on its own, and transactions go back into the pool
+     * {@code READMIT_BATCH} at a time, so {@link #addTransaction(Transaction)} is not held up for a
+     * whole reorganization. Those transactions are checked against the new tip, which is already
+     * published.
+     */
+    private void updateTxPool(BlockNode oldTip, BlockNode newTip) {
+        ArrayList<BlockNode> disconnected = new ArrayList<>();
+        ArrayList<BlockNode> connected = new ArrayList<>();
+        BlockNode main = oldTip;
+        BlockNode side = newTip;
+        while (main != side && (main != null || side != null)) {
+            if (side != null && (main == null || side.height >= main.height)) {
+                connected.add(side);
+                side = side.parent;
+            } else {
+                disconnected.add(main);
+                main = main.parent;
+            }
+        }
+        if (!disconnected.isEmpty()) {
+            metrics.reorgs.increment();
+            metrics.reorgDepth.record(disconnected.size());
+        }
+
+        ArrayList<Transaction> readmitted = new ArrayList<>();
+        for (int i = disconnected.size() - 1; i >= 0; i--) {
+            readmitted.addAll(disconnected.get(i).block.getTransactions());
+        }
+        boolean[] added = new boolean[readmitted.size()];
+        for (int from = 0; from < readmitted.size(); from += READMIT_BATCH) {
+            int to = Math.min(from + READMIT_BATCH, readmitted.size());
+            List<Transaction> batch = readmitted.subList(from, to);
+            boolean[] batchAdded = txPool.addTransactions(batch, utxoPool);
+            System.arraycopy(batchAdded, 0, added, from, batchAdded.length);
+        }
+        for (int i = connected.size() - 1; i >= 0; i--) {
+            for (Transaction tx : connected.get(i).block.getTransactions()) {
+                txPool.removeConfirmed(tx);
+            }
+        }
+
+        // outputs that existed on the old branch only
+        ArrayList<Transaction> gone = new ArrayList<>();
+        for (BlockNode node : disconnected) {
+            gone.add(node.block.getCoinbase());
+        }
+        for (int i = 0; i < added.length; i++) {
+            if (!added[i]) {
+                gone.add(readmitted.get(i));
+            }
+        }
+        for (Transaction tx : gone) {
+            for (int j = 0; j < tx.numOutputs(); j++) {
+                UTXO utxo = new UTXO(tx.getHash(), j);
+                if (!utxoPool.contains(utxo)) {
+                    txPool.removeSpender(utxo);
+                }
+            }
+        }
+
+        // transactions waiting for outputs that the new branch confirmed
+        for (int i = connected.size() - 1; i >= 0; i--) {
+            Block block = connected.get(i).block;
+            txPool.retryWaiting(block.getCoinbase().getHash(), utxoPool);
+            for (Transaction tx : block.getTransactions()) {
+                txPool.retryWaiting(tx.getHash(), utxoPool);
+            }
+        }
+    }
+
+    /**
+     * Queues a snapshot of the UTXO set after the main branch block of {@code height}, which is
+     * about to leave memory. Only the undo records down to that block are gathered here; the store's
+     * writer thread undoes them on a copy of the UTXO set, which costs nothing to take, and writes
+     * it, so the commit lock is not held for time proportional to the UTXO set. A failed snapshot
+     * only makes the next restart replay more blocks, so it does not fail any block; it is counted
+     * as {@code store.snapshot_failures}.
+     */
+    private void saveSnapshot(int height) {
+        UTXOPool pool = new UTXOPool(utxoPool);
+        ArrayList<BlockUndo> undos = new ArrayList<>();
+        BlockNode node = maxHeightNode;
+        while (node.height > height) {
+            undos.add(node.undo);
+            node = node.parent;
+        }
+        store.saveSnapshotLater(node.block.getHash(), height, node.position, () -> {
+            for (BlockUndo undo : undos) {
+                undo.disconnect(pool);
+            }
+            return pool;
+        }, metrics.snapshotFailures::increment);
+    }
+
+    private void addNode(BlockNode node) {
+        blockChain.put(node.hash, node);
+        heights[node.height % heights.length].nodes.add(node);
+    }
+
+    /**
+     * Drops every node of height {@code height}, touching only those nodes, and unlinks them from
+     * their children so that they can be garbage collected
+     */
+    private void evictHeight(int height) {
+        ArrayList<BlockNode> bucket = heights[height % heights.length].nodes;
+        for (BlockNode node : bucket) {
+            blockChain.remove(node.hash);
+            for (BlockNode child : node.children) {
+                child.parent = null;
+            }
+            node.children.clear();
+            node.parent = null;
+        }
+        bucket.clear();
+    }
+
+
+    /**
+     * Add the valid transactions of {@code txs} to the transaction pool, after checking them as one
+     * batch against the UTXO set of the max height block and the pool; see {@link TxBatchResult}
+     */
+    public TxBatchResult addTransactions(Collection<Transaction> txs) {
+        return TxBatchResult.admit(txPool, tip.get().utxoPool, txs, ForkJoinPool.commonPool(),
+                SignatureCache.getDefault());
+    }
+
+    /** Add a transaction to the transaction pool */
+    public void addTransaction(Transaction tx) {
+        // IMPLEMENT THIS
+        txPool.addTransaction(tx, tip.get().utxoPool);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+/** Handles blocks and transactions for one block chain; it can be called from any thread. */
+public class BlockHandler {
+    private final BlockChain blockChain;
+    private volatile BlockTemplate lastTemplate;
+    /** created by the first call that needs it, as it indexes the whole transaction pool */
+    private volatile BlockAssembler assembler;
+
+    /** assume blockChain has the genesis block */
+    public BlockHandler(BlockChain blockChain) {
+        this.blockChain = blockChain;
+    }
+
+    /**
+     * add {@code block} to the block chain if it is valid.
+     * 
+     * @return true if the block is valid and has been added, false otherwise
+     */
+    public boolean processBlock(Block block) {
+        if (block == null)
+            return false;
+        return blockChain.addBlock(block);
+    }
+
+    /** create a new {@code block} over the max height {@code block} */
+    public Block createBlock(PublicKey myAddress) {
+        BlockChain.Tip tip = blockChain.getTip();
+        byte[] parentHash = tip.getBlock().getHash();
+        Block current = new Block(parentHash, myAddress);
+        UTXOPool uPool = tip.getUTXOPool();
+        TransactionPool txPool = blockChain.getTransactionPool();
+        BlockTemplate template = BlockTemplate.build(uPool, txPool.getTransactions(), ForkJoinPool.commonPool());
+        for (Transaction tx : template.getTransactions())
+            current.addTransaction(tx);
+        lastTemplate = template;
+
+        current.finalize();
+        if (blockChain.addBlock(current))
+            return current;
+        else
+            return null;
+    }
+
+    /**
+     * create a new {@code block} over the max height {@code block} holding at most {@code maxTxs}
+     * transactions of at most {@code maxBytes} raw bytes in total, chosen by the fee rate of each
+     * transaction together with its unconfirmed ancestors
+     */
+    public Block createBlock(PublicKey myAddress, int maxTxs, long maxBytes) {
+        BlockAssembler assembler = assembler();
+        BlockChain.Tip tip = blockChain.getTip();
+        Block current = new Block(tip.getBlock().getHash(), myAddress);
+        UTXOPool uPool = tip.getUTXOPool();
+        BlockTemplate template = assembler.buildTemplate(uPool, maxTxs, maxBytes, ForkJoinPool.commonPool());
+        for (Transaction tx : template.getTransactions())
+            current.addTransaction(tx);
+        lastTemplate = template;
+
+        current.finalize();
+        if (blockChain.addBlock(current))
+            return current;
+        else
+            return null;
+    }
+
+    private BlockAssembler assembler() {
+        BlockAssembler a = assembler;
+        if (a == null) {
+            synchronized (this) {
+                a = assembler;
+                if (a == null) {
+                    a = new BlockAssembler(blockChain);
+                    assembler = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @return the template behind the last {@code createBlock} call, which also lists the pool
+     *         transactions that were left out as orphans, conflicts or invalid; null before the
+     *         first call
+     */
+    public BlockTemplate getLastTemplate() {
+        return lastTemplate;
+    }
+
+    /** process a {@code Transaction} */
+    public void processTx(Transaction tx) {
+        blockChain.addTransaction(tx);
+    }
+
+    /**
+     * process a batch of {@code Transaction}s, keeping only the valid ones
+     *
+     * @return what happened to each transaction, in the order of {@code txs}
+     */
+    public TxBatchResult processTxs(Collection<Transaction> txs) {
+        return blockChain.addTransactions(txs);
+    }
+}
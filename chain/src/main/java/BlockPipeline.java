@@ -0,0 +1,66 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Adds blocks to a {@link BlockChain} as they arrive, overlapping the work on consecutive blocks.
+ * As soon as a block is submitted, the checks that need no UTXO set run on the worker pool, along
+ * with the signatures of the inputs that claim outputs at the current chain tip, which usually are
+ * most of them. Connecting the block to the UTXO set, verifying the signatures that are left and
+ * committing it then happen in submission order, one block at a time, while later blocks go through
+ * their first stage. Each block gets the outcome {@code addBlock} would give it if the blocks were
+ * added one after the other in that order.
+ *
+ * <p>
+ * Blocks added to the chain directly while others are in flight are committed in between them.
+ */
+public class BlockPipeline {
+
+    private final BlockChain chain;
+    private final ForkJoinPool workers;
+    private final SignatureCache sigCache;
+    /** completes when the last block submitted has been added or rejected */
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    /** Creates a pipeline adding blocks to {@code chain} on the common pool */
+    public BlockPipeline(BlockChain chain) {
+        this(chain, ForkJoinPool.commonPool());
+    }
+
+    /** Creates a pipeline adding blocks to {@code chain} on {@code workers} */
+    public BlockPipeline(BlockChain chain, ForkJoinPool workers) {
+        this.chain = chain;
+        this.workers = workers;
+        this.sigCache = SignatureCache.getDefault();
+    }
+
+    /**
+     * Queues {@code block} to be added after every block submitted before it.
+     *
+     * @return a future completing with true if the block is valid and has been added, false
+     *         otherwise, or exceptionally if the block store failed
+     */
+    public synchronized CompletableFuture<Boolean> submit(Block block) {
+        if (block == null)
+            return CompletableFuture.completedFuture(false);
+        BlockValidator validator = new BlockValidator(block, workers, sigCache);
+        CompletableFuture<BlockValidator> checked = CompletableFuture.supplyAsync(() -> {
+            if (validator.checkStructure().isValid())
+                validator.preverify(chain.getMaxHeightUTXOPool());
+            return validator;
+        }, workers);
+        // a failed block does not hold up the ones after it
+        CompletableFuture<Boolean> added = tail.handle((result, failure) -> (Void) null)
+                .thenCombine(checked, (ignored, v) -> chain.addBlock(v) == BlockChain.Status.ACCEPTED);
+        tail = added;
+        return added;
+    }
+
+    /** Waits until every block submitted so far has been added or rejected */
+    public void drain() {
+        CompletableFuture<?> last;
+        synchronized (this) {
+            last = tail;
+        }
+        last.handle((result, failure) -> null).join();
+    }
+}
@@ -0,0 +1,626 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only store of the blocks a {@code BlockChain} accepted, with periodic snapshots of its UTXO
+ * set, kept in one directory:
+ * <ul>
+ * <li>{@code blocks-NNNNN.dat}: segment files of block records, each a header (magic, payload length,
+ * CRC-32 of the payload) followed by the payload. A new segment is started once one exceeds
+ * {@code SEGMENT_SIZE}.</li>
+ * <li>{@code blocks.idx}: fixed size (block hash, position) entries, one per record, in append
+ * order.</li>
+ * <li>{@code utxo-HEIGHT.snapshot}: the UTXO set after the main branch block of that height, with the
+ * position of the block's record and a trailing CRC-32.</li>
+ * </ul>
+ * The payload holds everything {@code getRawBlock} does, plus the coinbase recipient and length
+ * prefixes so that the block can be decoded; decoding recomputes the block hash and compares it to
+ * the stored one.
+ *
+ * <p>
+ * Opening a store only checks its tail: the last index entry must point at a complete record, a
+ * record written after it is indexed, and anything torn by a crash is truncated. The block index is
+ * read on the first lookup by hash.
+ *
+ * <p>
+ * Appending does not wait for the disk. The store has a writer thread that forces appended records
+ * to disk in groups, one fsync for all the blocks appended before it started, and writes the
+ * snapshots queued with {@link #saveSnapshotLater}. A crash can lose the last few blocks, which are
+ * truncated on recovery like any torn record; {@link #sync()} and {@link #close()} wait for the
+ * disk. A sync that fails is reported by the next {@link #append(Block)}.
+ */
+public class BlockStore {
+
+    /** a segment is closed once it grows past this many bytes */
+    public static final long SEGMENT_SIZE = 64L << 20;
+    /** by default a snapshot is taken every this many heights */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+    private static final int RECORD_MAGIC = 0x424c4b32;
+    private static final int SNAPSHOT_MAGIC = 0x55545853;
+    private static final int SNAPSHOT_FORMAT = 2;
+    private static final int RECORD_HEADER = 12;
+    private static final int HASH_LENGTH = 32;
+    private static final int INDEX_ENTRY = HASH_LENGTH + Long.BYTES;
+    /** snapshots kept on disk, the latest one and the ones before it as fallbacks */
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    /** the state a chain restarts from: a block of the main branch and the UTXO set after it */
+    public static final class Snapshot {
+        private final byte[] blockHash;
+        private final int height;
+        private final long position;
+        private final UTXOPool utxoPool;
+
+        private Snapshot(byte[] blockHash, int height, long position, UTXOPool utxoPool) {
+            this.blockHash = blockHash;
+            this.height = height;
+            this.position = position;
+            this.utxoPool = utxoPool;
+        }
+
+        public byte[] getBlockHash() {
+            return blockHash;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /** @return the position of the block's record */
+        public long getPosition() {
+            return position;
+        }
+
+        public UTXOPool getUtxoPool() {
+            return utxoPool;
+        }
+    }
+
+    /** owner of the outputs read back from a snapshot */
+    private static final Transaction OUTPUT_OWNER = new Transaction();
+
+    private final File directory;
+    private final int snapshotInterval;
+    private final RandomAccessFile index;
+    private final ArrayList<RandomAccessFile> segments = new ArrayList<RandomAccessFile>();
+    private HashMap<ByteArrayWrapper, Long> positions;
+    /** files written since they were last forced to disk, guarded by the store's monitor */
+    private final LinkedHashSet<RandomAccessFile> dirty = new LinkedHashSet<RandomAccessFile>();
+    /** true while a group sync is queued on the writer thread, guarded by the store's monitor */
+    private boolean syncQueued;
+    /** the failure of the last background sync, thrown by the next append */
+    private IOException syncFailure;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "block-store-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Opens the store in {@code directory}, creating it if needed */
+    public BlockStore(File directory) throws IOException {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens the store in {@code directory}, creating it if needed, taking a snapshot every
+     * {@code snapshotInterval} heights
+     *
+     * @throws IOException if the directory cannot be used or its files are not a block store
+     */
+    public BlockStore(File directory, int snapshotInterval) throws IOException {
+        if (snapshotInterval <= 0)
+            throw new IllegalArgumentException("snapshotInterval must be positive");
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        Files.createDirectories(directory.toPath());
+        for (int i = 0;; i++) {
+            File segment = segmentFile(i);
+            if (!segment.exists())
+                break;
+            segments.add(new RandomAccessFile(segment, "rw"));
+        }
+        index = new RandomAccessFile(new File(directory, "blocks.idx"), "rw");
+        recover();
+    }
+
+    /** @return true if no block has been appended yet */
+    public synchronized boolean isEmpty() {
+        return firstPosition() < 0;
+    }
+
+    /** @return the position of the first record, or -1 if the store is empty */
+    public synchronized long firstPosition() {
+        try {
+            return index.length() == 0 ? -1 : readIndexPosition(0);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** @return the position of the record after the one at {@code position}, or -1 if it is the last */
+    public synchronized long nextPosition(long position) throws IOException {
+        int segment = segmentOf(position);
+        RandomAccessFile file = segments.get(segment);
+        file.seek(offsetOf(position) + 4);
+        long next = offsetOf(position) + RECORD_HEADER + file.readInt();
+        if (next < file.length())
+            return position(segment, next);
+        if (segment + 1 < segments.size() && segments.get(segment + 1).length() > 0)
+            return position(segment + 1, 0);
+        return -1;
+    }
+
+    /**
+     * Appends {@code block}, which must be finalized. The record is forced to disk shortly after,
+     * together with the records appended meanwhile.
+     *
+     * @return the position of its record
+     * @throws IOException if the block cannot be written, or the last background sync failed
+     */
+    public synchronized long append(Block block) throws IOException {
+        if (syncFailure != null) {
+            IOException e = syncFailure;
+            syncFailure = null;
+            throw e;
+        }
+        byte[] payload = encode(block);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (segments.isEmpty() || segments.get(segments.size() - 1).length() >= SEGMENT_SIZE)
+            segments.add(new RandomAccessFile(segmentFile(segments.size()), "rw"));
+        int segment = segments.size() - 1;
+        RandomAccessFile file = segments.get(segment);
+        long offset = file.length();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+        record.putInt(RECORD_MAGIC).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        file.seek(offset);
+        file.write(record.array());
+
+        long position = position(segment, offset);
+        writeIndexEntry(block.getHash(), position);
+        if (positions != null)
+            positions.put(new ByteArrayWrapper(block.getHash()), position);
+        dirty.add(file);
+        dirty.add(index);
+        if (!syncQueued) {
+            syncQueued = true;
+            writer.execute(this::groupSync);
+        }
+        return position;
+    }
+
+    /** Forces every record appended so far to disk */
+    public void sync() throws IOException {
+        List<RandomAccessFile> files;
+        synchronized (this) {
+            files = new ArrayList<RandomAccessFile>(dirty);
+            dirty.clear();
+        }
+        // segments come before the index, so an entry never reaches the disk before its record
+        for (RandomAccessFile file : files)
+            file.getFD().sync();
+    }
+
+    /** Runs on the writer thread: one sync for whatever was appended since the last one */
+    private void groupSync() {
+        synchronized (this) {
+            syncQueued = false;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                syncFailure = e;
+            }
+        }
+    }
+
+    /**
+     * @return the block whose record is at {@code position}
+     * @throws IOException if the record is damaged
+     */
+    public synchronized Block read(long position) throws IOException {
+        return decode(readPayload(position));
+    }
+
+    /** @return the block with hash {@code blockHash}, or null if the store does not have it */
+    public synchronized Block getBlock(byte[] blockHash) throws IOException {
+        if (positions == null) {
+            HashMap<ByteArrayWrapper, Long> all = new HashMap<ByteArrayWrapper, Long>();
+            long entries = index.length() / INDEX_ENTRY;
+            index.seek(0);
+            byte[] hash = new byte[HASH_LENGTH];
+            for (long i = 0; i < entries; i++) {
+                index.readFully(hash);
+                all.put(new ByteArrayWrapper(hash), index.readLong());
+            }
+            positions = all;
+        }
+        Long position = positions.get(new ByteArrayWrapper(blockHash));
+        return position == null ? null : read(position);
+    }
+
+    /** @return true if a snapshot is due when the block of {@code height} leaves memory */
+    public boolean isSnapshotDue(int height) {
+        return height % snapshotInterval == 0;
+    }
+
+    /**
+     * Queues {@link #saveSnapshot} on the writer thread, with the UTXO set {@code utxoPool} returns
+     * there. Whatever the supplier reads must not change any more; a copy of a {@code UTXOPool}
+     * costs nothing and is enough.
+     *
+     * @param onFailure run on the writer thread if the snapshot cannot be written
+     */
+    public void saveSnapshotLater(byte[] blockHash, int height, long position, Supplier<UTXOPool> utxoPool,
+            Runnable onFailure) {
+        writer.execute(() -> {
+            try {
+                saveSnapshot(blockHash, height, position, utxoPool.get());
+            } catch (IOException | RuntimeException e) {
+                onFailure.run();
+            }
+        });
+    }
+
+    /**
+     * Writes {@code utxoPool}, the UTXO set after the block with hash {@code blockHash} at
+     * {@code height} whose record is at {@code position}, as the latest snapshot, once the records
+     * appended so far are on disk. The file is written aside and renamed into place, so a crash
+     * leaves the previous snapshot usable.
+     */
+    public void saveSnapshot(byte[] blockHash, int height, long position, UTXOPool utxoPool) throws IOException {
+        sync();
+        File file = new File(directory, "utxo-" + height + ".snapshot");
+        File tmp = new File(directory, "utxo-" + height + ".snapshot.tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            writeBytes(out, blockHash);
+            out.writeInt(height);
+            out.writeLong(position);
+
+            ArrayList<UTXO> utxos = utxoPool.getAllUTXO();
+            HashMap<AddressRegistry.Address, Integer> keyIds = new HashMap<AddressRegistry.Address, Integer>();
+            List<PublicKey> keys = new ArrayList<PublicKey>();
+            int[] keyOf = new int[utxos.size()];
+            for (int i = 0; i < utxos.size(); i++) {
+                AddressRegistry.Address address = utxoPool.getTxOutput(utxos.get(i)).getAddress();
+                Integer id = keyIds.putIfAbsent(address, keys.size());
+                if (id == null) {
+                    id = keys.size();
+                    keys.add(address.getKey());
+                }
+                keyOf[i] = id;
+            }
+            out.writeInt(keys.size());
+            for (PublicKey key : keys)
+                writeKey(out, key);
+            out.writeInt(utxos.size());
+            for (int i = 0; i < utxos.size(); i++) {
+                UTXO utxo = utxos.get(i);
+                writeBytes(out, utxo.getTxHash());
+                out.writeInt(utxo.getIndex());
+                out.writeLong(utxoPool.getTxOutput(utxo).value);
+                out.writeInt(keyOf[i]);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        List<Integer> heights = snapshotHeights();
+        for (int i = SNAPSHOTS_KEPT; i < heights.size(); i++)
+            Files.deleteIfExists(new File(directory, "utxo-" + heights.get(i) + ".snapshot").toPath());
+    }
+
+    /**
+     * @return the latest snapshot that is intact and whose block is in the store, or null if there is
+     *         none
+     */
+    public synchronized Snapshot loadSnapshot() throws IOException {
+        for (int height : snapshotHeights()) {
+            Snapshot snapshot = readSnapshot(new File(directory, "utxo-" + height + ".snapshot"));
+            if (snapshot != null)
+                return snapshot;
+        }
+        return null;
+    }
+
+    /** Waits for the queued snapshots, forces the appended records to disk and closes the files */
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        index.close();
+        for (RandomAccessFile segment : segments)
+            segment.close();
+    }
+
+    private Snapshot readSnapshot(File file) throws IOException {
+        long length = file.length();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fis), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (length < 8 || in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT)
+                return null;
+            byte[] blockHash = readBytes(in);
+            int height = in.readInt();
+            long position = in.readLong();
+            PublicKey[] keys = new PublicKey[in.readInt()];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = readKey(in);
+            UTXOPool utxoPool = new UTXOPool();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] txHash = readBytes(in);
+                int index = in.readInt();
+                long value = in.readLong();
+                utxoPool.addUTXO(new UTXO(txHash, index), OUTPUT_OWNER.new Output(value, keys[in.readInt()]));
+            }
+            long crc = checked.getChecksum().getValue();
+            if (in.readLong() != crc)
+                return null;
+            if (!containsRecord(position, blockHash))
+                return null;
+            return new Snapshot(blockHash, height, position, utxoPool);
+        } catch (IOException | RuntimeException e) {
+            // damaged, fall back to an older snapshot
+            return null;
+        }
+    }
+
+    /** @return the heights of the snapshots on disk, latest first */
+    private List<Integer> snapshotHeights() {
+        List<Integer> heights = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names == null)
+            return heights;
+        for (String name : names) {
+            if (name.startsWith("utxo-") && name.endsWith(".snapshot")) {
+                try {
+                    heights.add(Integer.parseInt(name.substring(5, name.length() - 9)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        heights.sort((a, b) -> Integer.compare(b, a));
+        return heights;
+    }
+
+    private boolean containsRecord(long position, byte[] blockHash) {
+        try {
+            byte[] payload = readPayload(position);
+            return Arrays.equals(readBytes(new DataInputStream(new ByteArrayInputStream(payload))), blockHash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops whatever a crash left half written: index entries past the end of the segments, then
+     * records past the last index entry are indexed if they are complete and truncated otherwise
+     */
+    private void recover() throws IOException {
+        index.setLength(index.length() / INDEX_ENTRY * INDEX_ENTRY);
+        long entries = index.length() / INDEX_ENTRY;
+        long end = 0;
+        int segment = 0;
+        while (entries > 0) {
+            long position = readIndexPosition(entries - 1);
+            try {
+                readPayload(position);
+                segment = segmentOf(position);
+                RandomAccessFile file = segments.get(segment);
+                file.seek(offsetOf(position) + 4);
+                end = offsetOf(position) + RECORD_HEADER + file.readInt();
+                break;
+            } catch (IOException | IndexOutOfBoundsException e) {
+                entries--;
+                index.setLength(entries * INDEX_ENTRY);
+            }
+        }
+
+        for (; segment < segments.size(); segment++, end = 0) {
+            RandomAccessFile file = segments.get(segment);
+            while (end < file.length()) {
+                long position = position(segment, end);
+                byte[] payload;
+                try {
+                    payload = readPayload(position);
+                } catch (IOException e) {
+                    break;
+                }
+                index.seek(index.length());
+                writeIndexEntry(readBytes(new DataInputStream(new ByteArrayInputStream(payload))), position);
+                end += RECORD_HEADER + payload.length;
+            }
+            if (end < file.length()) {
+                // a torn record; nothing after it can have been written completely
+                file.setLength(end);
+                for (int later = segments.size() - 1; later > segment; later--) {
+                    segments.remove(later).close();
+                    Files.deleteIfExists(segmentFile(later).toPath());
+                }
+            }
+        }
+        index.getFD().sync();
+    }
+
+    private byte[] readPayload(long position) throws IOException {
+        RandomAccessFile file = segments.get(segmentOf(position));
+        long offset = offsetOf(position);
+        if (offset + RECORD_HEADER > file.length())
+            throw new IOException("record at " + position + " is truncated");
+        file.seek(offset);
+        if (file.readInt() != RECORD_MAGIC)
+            throw new IOException("no record at " + position);
+        int length = file.readInt();
+        int crc = file.readInt();
+        if (length < 0 || offset + RECORD_HEADER + length > file.length())
+            throw new IOException("record at " + position + " is truncated");
+        byte[] payload = new byte[length];
+        file.readFully(payload);
+        CRC32 check = new CRC32();
+        check.update(payload);
+        if ((int) check.getValue() != crc)
+            throw new IOException("record at " + position + " is damaged");
+        return payload;
+    }
+
+    private void writeIndexEntry(byte[] blockHash, long position) throws IOException {
+        if (blockHash.length != HASH_LENGTH)
+            throw new IllegalArgumentException("block hashes must be " + HASH_LENGTH + " bytes");
+        index.seek(index.length());
+        index.write(blockHash);
+        index.writeLong(position);
+    }
+
+    private long readIndexPosition(long entry) throws IOException {
+        index.seek(entry * INDEX_ENTRY + HASH_LENGTH);
+        return index.readLong();
+    }
+
+    private static byte[] encode(Block block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.rawBlockSize() + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeBytes(out, block.getHash());
+        writeBytes(out, block.getPrevBlockHash());
+        Transaction.Output reward = block.getCoinbase().getOutput(0);
+        out.writeLong(reward.value);
+        writeKey(out, reward.address);
+        out.writeInt(block.getTransactions().size());
+        for (Transaction tx : block.getTransactions()) {
+            out.writeInt(tx.numInputs());
+            for (Transaction.Input in : tx.getInputs()) {
+                writeBytes(out, in.prevTxHash);
+                out.writeInt(in.outputIndex);
+                writeBytes(out, in.signature);
+            }
+            out.writeInt(tx.numOutputs());
+            for (Transaction.Output op : tx.getOutputs()) {
+                out.writeLong(op.value);
+                writeKey(out, op.address);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Block decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte[] hash = readBytes(in);
+        byte[] prevBlockHash = readBytes(in);
+        long reward = in.readLong();
+        Block block = new Block(prevBlockHash, readKey(in));
+        if (block.getCoinbase().getOutput(0).value != reward)
+            throw new IOException("block was stored with a coinbase of " + reward);
+        int numTxs = in.readInt();
+        for (int t = 0; t < numTxs; t++) {
+            Transaction tx = new Transaction();
+            int numInputs = in.readInt();
+            for (int i = 0; i < numInputs; i++) {
+                tx.addInput(readBytes(in), in.readInt());
+                tx.getInput(i).addSignature(readBytes(in));
+            }
+            int numOutputs = in.readInt();
+            for (int i = 0; i < numOutputs; i++)
+                tx.addOutput(in.readLong(), readKey(in));
+            tx.finalize();
+            block.addTransaction(tx);
+        }
+        block.finalize();
+        if (!Arrays.equals(block.getHash(), hash))
+            throw new IOException("stored block does not hash to " + Arrays.toString(hash));
+        return block;
+    }
+
+    /** writes {@code b} with a length prefix, -1 standing for null */
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        if (b == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return b;
+    }
+
+    private static void writeKey(DataOutputStream out, PublicKey key) throws IOException {
+        out.writeUTF(key.getAlgorithm());
+        writeBytes(out, key.getEncoded());
+    }
+
+    private static PublicKey readKey(DataInputStream in) throws IOException {
+        String algorithm = in.readUTF();
+        byte[] encoded = readBytes(in);
+        try {
+            return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (GeneralSecurityException | NullPointerException e) {
+            throw new IOException("cannot decode " + algorithm + " key", e);
+        }
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, String.format("blocks-%05d.dat", segment));
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << 40) | offset;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 40);
+    }
+
+    private static long offsetOf(long position) {
+        return position & ((1L << 40) - 1);
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The transactions a new block can hold, picked from a set of unconfirmed candidates. Candidates
+ * are indexed by the outputs they create and spend and sorted topologically, so that every
+ * transaction comes after the candidates it spends from; a single {@code handleTxs} pass then
+ * accepts children together with their parents. Rejected candidates are reported by cause instead
+ * of being dropped silently.
+ */
+public class BlockTemplate {
+
+    private final List<Transaction> transactions = new ArrayList<Transaction>();
+    private final List<Transaction> orphans = new ArrayList<Transaction>();
+    private final List<Transaction> conflicts = new ArrayList<Transaction>();
+    private final List<Transaction> invalid = new ArrayList<Transaction>();
+    private UTXOPool utxoPool;
+
+    private BlockTemplate() {
+    }
+
+    /**
+     * Builds a template over {@code utxoPool}, the UTXO pool of the block to mine on, from
+     * {@code candidates}. Runs in time linear in the total number of inputs and outputs.
+     *
+     * @param verifier pool used to verify signatures, or null to verify them serially
+     */
+    public static BlockTemplate build(UTXOPool utxoPool, Collection<Transaction> candidates, ForkJoinPool verifier) {
+        BlockTemplate template = new BlockTemplate();
+        Transaction[] txs = candidates.toArray(new Transaction[0]);
+        int[] order = topologicalOrder(txs);
+        Transaction[] ordered = new Transaction[txs.length];
+        for (int i = 0; i < txs.length; i++) {
+            ordered[i] = txs[order[i]];
+        }
+        TxHandler handler = new TxHandler(utxoPool, verifier);
+        Transaction[] accepted = handler.handleTxs(ordered);
+        template.utxoPool = handler.getUtxoPool();
+        template.classify(utxoPool, ordered, accepted);
+        return template;
+    }
+
+    /** @return the accepted transactions, parents before children */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /** @return candidates spending an output that neither the UTXO pool nor an accepted candidate holds */
+    public List<Transaction> getOrphans() {
+        return orphans;
+    }
+
+    /** @return candidates spending an output that an accepted candidate already spends */
+    public List<Transaction> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return candidates rejected for a bad signature, a negative output, values that don't add up
+     *         or a malformed input
+     */
+    public List<Transaction> getInvalid() {
+        return invalid;
+    }
+
+    /** @return the UTXO pool after applying the accepted transactions */
+    public UTXOPool getUtxoPool() {
+        return utxoPool;
+    }
+
+    /**
+     * Kahn's algorithm over the spends-from relation. Ties keep the order of {@code txs};
+     * transactions left over (only possible with a hash cycle) are appended at the end.
+     *
+     * @return the indices of {@code txs} in that order
+     */
+    static int[] topologicalOrder(Transaction[] txs) {
+        HashMap<ByteArrayWrapper, Integer> byHash = new HashMap<ByteArrayWrapper, Integer>();
+        for (int i = 0; i < txs.length; i++) {
+            byHash.putIfAbsent(new ByteArrayWrapper(txs[i].getHash()), i);
+        }
+
+        int[] pendingParents = new int[txs.length];
+        List<List<Integer>> children = new ArrayList<List<Integer>>(txs.length);
+        for (int i = 0; i < txs.length; i++) {
+            children.add(null);
+        }
+        for (int i = 0; i < txs.length; i++) {
+            for (Transaction.Input in : txs[i].getInputs()) {
+                if (in.prevTxHash == null)
+                    continue;
+                Integer parent = byHash.get(new ByteArrayWrapper(in.prevTxHash));
+                if (parent == null || parent == i)
+                    continue;
+                if (children.get(parent) == null)
+                    children.set(parent, new ArrayList<Integer>());
+                children.get(parent).add(i);
+                pendingParents[i]++;
+            }
+        }
+
+        ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+        for (int i = 0; i < txs.length; i++) {
+            if (pendingParents[i] == 0)
+                ready.add(i);
+        }
+        int[] ordered = new int[txs.length];
+        boolean[] placed = new boolean[txs.length];
+        int n = 0;
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            ordered[n++] = i;
+            placed[i] = true;
+            if (children.get(i) == null)
+                continue;
+            for (int child : children.get(i)) {
+                if (--pendingParents[child] == 0)
+                    ready.add(child);
+            }
+        }
+        for (int i = 0; i < txs.length; i++) {
+            if (!placed[i])
+                ordered[n++] = i;
+        }
+        return ordered;
+    }
+
+    private void classify(UTXOPool before, Transaction[] ordered, Transaction[] accepted) {
+        Set<Transaction> acceptedSet = Collections.newSetFromMap(new IdentityHashMap<Transaction, Boolean>());
+        int inputs = 0;
+        int outputs = 0;
+        for (Transaction tx : accepted) {
+            inputs += tx.numInputs();
+            outputs += tx.numOutputs();
+        }
+        UTXOSet spent = new UTXOSet(inputs);
+        UTXOSet created = new UTXOSet(outputs);
+        for (Transaction tx : accepted) {
+            transactions.add(tx);
+            acceptedSet.add(tx);
+            for (Transaction.Input in : tx.getInputs()) {
+                spent.add(in.prevTxHash, in.outputIndex);
+            }
+            byte[] txHash = tx.getHash();
+            for (int j = 0; j < tx.numOutputs(); j++) {
+                created.add(txHash, j);
+            }
+        }
+
+        for (Transaction tx : ordered) {
+            if (acceptedSet.contains(tx))
+                continue;
+            // a malformed input has no output to look up, so it cannot make an orphan or a conflict
+            if (!TxHandler.checkStructure(tx).isValid()) {
+                invalid.add(tx);
+                continue;
+            }
+            boolean conflict = false;
+            boolean missing = false;
+            for (Transaction.Input in : tx.getInputs()) {
+                if (spent.contains(in.prevTxHash, in.outputIndex))
+                    conflict = true;
+                else if (!before.contains(in.prevTxHash, in.outputIndex)
+                        && !created.contains(in.prevTxHash, in.outputIndex))
+                    missing = true;
+            }
+            if (conflict)
+                conflicts.add(tx);
+            else if (missing)
+                orphans.add(tx);
+            else
+                invalid.add(tx);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * The changes one block made to the UTXO set: every output it spent, with the output itself so that
+ * it can be restored, and every output it created, in the order they happened. Replaying the record
+ * forward connects the block to the UTXO set of its parent; replaying it backward disconnects the
+ * block again. Its size is proportional to the block, not to the UTXO set.
+ */
+final class BlockUndo {
+
+    private final ArrayList<UTXO> keys = new ArrayList<UTXO>();
+    private final ArrayList<Transaction.Output> outputs = new ArrayList<Transaction.Output>();
+    /**
+     * for a created output, the output it overwrote (equal transactions, e.g. two coinbases paying
+     * the same address, have equal hashes), or null
+     */
+    private final ArrayList<Transaction.Output> overwritten = new ArrayList<Transaction.Output>();
+    /** bit i is set if change i created its output, clear if it spent it */
+    private final BitSet created = new BitSet();
+
+    /**
+     * Applies {@code tx} to {@code pool} and records the changes. {@code tx} must be valid against
+     * {@code pool}.
+     */
+    void connect(Transaction tx, UTXOPool pool) {
+        for (Transaction.Input in : tx.getInputs()) {
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            Transaction.Output spent = pool.getTxOutput(utxo);
+            pool.removeUTXO(utxo);
+            record(utxo, spent, false, null);
+        }
+        byte[] txHash = tx.getHash();
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            UTXO utxo = new UTXO(txHash, i);
+            Transaction.Output out = tx.getOutput(i);
+            Transaction.Output previous = pool.getTxOutput(utxo);
+            pool.addUTXO(utxo, out);
+            record(utxo, out, true, previous);
+        }
+    }
+
+    /** Applies the recorded changes to {@code pool}, the UTXO set of the block's parent */
+    void reconnect(UTXOPool pool) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (created.get(i))
+                pool.addUTXO(keys.get(i), outputs.get(i));
+            else
+                pool.removeUTXO(keys.get(i));
+        }
+    }
+
+    /** Reverts the recorded changes in {@code pool}, the UTXO set right after the block */
+    void disconnect(UTXOPool pool) {
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            if (created.get(i) && overwritten.get(i) != null)
+                pool.addUTXO(keys.get(i), overwritten.get(i));
+            else if (created.get(i))
+                pool.removeUTXO(keys.get(i));
+            else
+                pool.addUTXO(keys.get(i), outputs.get(i));
+        }
+    }
+
+    private void record(UTXO utxo, Transaction.Output out, boolean isCreated, Transaction.Output previous) {
+        created.set(keys.size(), isCreated);
+        keys.add(utxo);
+        outputs.add(out);
+        overwritten.add(previous);
+    }
+}
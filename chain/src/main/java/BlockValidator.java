@@ -0,0 +1,246 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Checks the transactions of one block in the stages {@code BlockChain.addBlock} runs them in, the
+ * order of {@link ValidationResult}:
+ * <ol>
+ * <li>{@link #checkStructure()}: what can be checked on a transaction alone (it has a hash, every
+ * input is signed, no output is claimed twice, every output value is positive and the values do not
+ * overflow), in parallel across transactions;</li>
+ * <li>{@link #connect(UTXOPool, BlockUndo)}: one sequential pass applying the transactions in order
+ * to the UTXO set of the parent block, checking that every claimed output exists and covers the
+ * outputs created;</li>
+ * <li>{@link #verifySignatures()}: every input signature against the output it spends, in parallel
+ * across inputs.</li>
+ * </ol>
+ * Each stage returns {@code VALID} or the result of the first transaction of the block that failed
+ * it. The block is valid if every stage succeeds; that is exactly when the serial
+ * {@code TxHandler.handleTxs} would accept all of its transactions. The first stage does not look at
+ * the UTXO set, so {@link BlockPipeline} runs it for a block while the blocks before it are still
+ * being connected, together with {@link #preverify(UTXOPool)}.
+ */
+final class BlockValidator {
+
+    /** Below this many transactions or inputs a stage runs on the calling thread */
+    static final int GRAIN = TxHandler.PARALLEL_THRESHOLD;
+
+    private final Block block;
+    private final Transaction[] txs;
+    private final ForkJoinPool workers;
+    private final SignatureCache sigCache;
+
+    /** result of the first stage, or null until it has run */
+    private ValidationResult structure;
+    /** the sum of the output values of each transaction, filled in by the first stage */
+    private final long[] outputSums;
+    /** the outputs claimed by the inputs of each transaction, filled in by {@code connect} */
+    private final Transaction.Output[][] spent;
+
+    /**
+     * Creates a validator for {@code block} whose parallel stages run on {@code workers}, or on the
+     * calling thread if it is null, and look signatures up in {@code sigCache} if it is not null
+     */
+    BlockValidator(Block block, ForkJoinPool workers, SignatureCache sigCache) {
+        this.block = block;
+        List<Transaction> list = block.getTransactions();
+        this.txs = list.toArray(new Transaction[list.size()]);
+        this.workers = workers;
+        this.sigCache = sigCache;
+        this.outputSums = new long[txs.length];
+        this.spent = new Transaction.Output[txs.length][];
+    }
+
+    Block getBlock() {
+        return block;
+    }
+
+    /** @return the transactions of the block, in order */
+    Transaction[] getTransactions() {
+        return txs;
+    }
+
+    /**
+     * Runs the first stage, or returns its result if it already ran.
+     *
+     * @return {@code VALID} if every transaction of the block is well formed
+     */
+    synchronized ValidationResult checkStructure() {
+        if (structure == null) {
+            ValidationResult[] results = new ValidationResult[txs.length];
+            forEach(txs.length, i -> {
+                results[i] = checkStructure(txs[i]);
+                if (results[i].isValid())
+                    outputSums[i] = TxHandler.outputSum(txs[i]);
+            });
+            structure = firstFailure(results);
+        }
+        return structure;
+    }
+
+    /**
+     * Runs the checks of the first stage on {@code tx} alone, memoizing the signing preimages of its
+     * inputs if it passes.
+     *
+     * @return {@code VALID}, or why {@code tx} is not well formed
+     */
+    static ValidationResult checkStructure(Transaction tx) {
+        if (tx == null || tx.getHash() == null)
+            return ValidationResult.MALFORMED;
+        ValidationResult result = TxHandler.checkStructure(tx);
+        if (result.isValid()) {
+            // memoizes the preimages the signature stage needs
+            for (int j = 0; j < tx.numInputs(); j++)
+                tx.rawDataToSign(j);
+        }
+        return result;
+    }
+
+    /** @return the first result of {@code results} that is not {@code VALID}, or {@code VALID} */
+    private static ValidationResult firstFailure(ValidationResult[] results) {
+        for (ValidationResult r : results) {
+            if (!r.isValid())
+                return r;
+        }
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * Verifies ahead of time the signatures of the inputs claiming outputs that are in {@code tip},
+     * recording the valid ones in the signature cache. This is a guess that the block extends
+     * {@code tip}: whatever the block turns out to spend, {@link #verifySignatures()} still checks
+     * every signature against it, and only the cache lookups of the right guesses are saved from
+     * RSA verification. Does nothing without a cache or for a block that is not well formed.
+     */
+    void preverify(UTXOPool tip) {
+        if (sigCache == null || !checkStructure().isValid())
+            return;
+        forEach(txs.length, i -> {
+            Transaction tx = txs[i];
+            for (int j = 0; j < tx.numInputs(); j++) {
+                Transaction.Input in = tx.getInput(j);
+                Transaction.Output out = tip.getTxOutput(in.prevTxHash, in.outputIndex);
+                if (out != null)
+                    sigCache.verify(tx, j, out);
+            }
+        });
+    }
+
+    /**
+     * Second stage: applies the transactions of the block to {@code pool}, the UTXO set of its
+     * parent, recording the changes in {@code undo}. Stops at the first transaction that claims an
+     * output not in {@code pool} or creates more value than it claims, leaving {@code pool} half
+     * updated. The first stage must have succeeded.
+     *
+     * @return {@code VALID} if every transaction could be applied, otherwise
+     *         {@code MISSING_INPUT} or {@code INSUFFICIENT_INPUT}
+     */
+    ValidationResult connect(UTXOPool pool, BlockUndo undo) {
+        for (int i = 0; i < txs.length; i++) {
+            Transaction tx = txs[i];
+            Transaction.Output[] claimed = new Transaction.Output[tx.numInputs()];
+            long inputSum = 0;
+            for (int j = 0; j < claimed.length; j++) {
+                Transaction.Input in = tx.getInput(j);
+                claimed[j] = pool.getTxOutput(in.prevTxHash, in.outputIndex);
+                if (claimed[j] == null)
+                    return ValidationResult.MISSING_INPUT;
+                inputSum = Amounts.saturatedAdd(inputSum, claimed[j].value);
+            }
+            if (outputSums[i] > inputSum)
+                return ValidationResult.INSUFFICIENT_INPUT;
+            spent[i] = claimed;
+            undo.connect(tx, pool);
+        }
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * Third stage: verifies the signature of every input against the output {@code connect} found
+     * it claims. The second stage must have succeeded.
+     *
+     * @return {@code VALID} if every signature is valid, otherwise {@code BAD_SIGNATURE}
+     */
+    ValidationResult verifySignatures() {
+        int total = 0;
+        for (Transaction tx : txs)
+            total += tx.numInputs();
+        int[] txOf = new int[total];
+        int[] inputOf = new int[total];
+        int k = 0;
+        for (int i = 0; i < txs.length; i++) {
+            for (int j = 0; j < txs[i].numInputs(); j++, k++) {
+                txOf[k] = i;
+                inputOf[k] = j;
+            }
+        }
+        boolean[] valid = new boolean[total];
+        forEach(total, b -> {
+            Transaction tx = txs[txOf[b]];
+            int j = inputOf[b];
+            Transaction.Output out = spent[txOf[b]][j];
+            valid[b] = verifySignature(sigCache, tx, j, out);
+        });
+        for (boolean b : valid) {
+            if (!b)
+                return ValidationResult.BAD_SIGNATURE;
+        }
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * @return true if the signature on input {@code index} of {@code tx} is valid for {@code spent},
+     *         looking it up in {@code sigCache} first if that is not null
+     */
+    static boolean verifySignature(SignatureCache sigCache, Transaction tx, int index, Transaction.Output spent) {
+        if (sigCache != null)
+            return sigCache.verify(tx, index, spent);
+        return Crypto.verifySignature(spent.address, tx.rawDataToSign(index), tx.getInput(index).signature);
+    }
+
+    private void forEach(int n, IntConsumer body) {
+        forEach(workers, n, body);
+    }
+
+    /**
+     * Runs {@code body} for 0 to {@code n - 1}, on {@code workers} if it is not null and there are
+     * enough of them
+     */
+    static void forEach(ForkJoinPool workers, int n, IntConsumer body) {
+        if (workers == null || n < GRAIN) {
+            for (int i = 0; i < n; i++)
+                body.accept(i);
+            return;
+        }
+        workers.invoke(new RangeTask(body, 0, n));
+    }
+
+    /** Runs the body for [from, to), splitting the range until it is small. */
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int BATCH = 4;
+
+        private final IntConsumer body;
+        private final int from;
+        private final int to;
+
+        RangeTask(IntConsumer body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH) {
+                for (int i = from; i < to; i++)
+                    body.accept(i);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(body, from, mid), new RangeTask(body, mid, to));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics one {@code BlockChain} updates, looked up once in its registry:
+ * <ul>
+ * <li>{@code block.add}: time spent in {@code addBlock}, waiting for the commit lock included;</li>
+ * <li>{@code block.structure}, {@code block.lookup}, {@code block.utxo_copy},
+ * {@code block.validate}, {@code block.signatures}, {@code block.commit}, {@code block.prune}: time
+ * taken by each stage of adding a block that got through it;</li>
+ * <li>{@code block.accepted} and {@code block.rejected.<status>}: blocks by
+ * {@code BlockChain.Status};</li>
+ * <li>{@code block.orphans} and {@code block.orphans_connected}: blocks in the orphan pool, and
+ * orphans added once their previous block was;</li>
+ * <li>{@code block.reorgs} and {@code block.reorg_depth}: main branch changes and the number of
+ * blocks each one disconnected;</li>
+ * <li>{@code chain.height}, {@code chain.utxo_size} and {@code mempool.size}: gauges of the tip and
+ * the transaction pool.</li>
+ * </ul>
+ */
+final class ChainMetrics {
+
+    final Histogram add;
+    final Histogram structure;
+    final Histogram lookup;
+    final Histogram utxoCopy;
+    final Histogram validate;
+    final Histogram signatures;
+    final Histogram commit;
+    final Histogram prune;
+    final Histogram reorgDepth;
+    final LongAdder reorgs;
+    final LongAdder orphansConnected;
+    final AtomicLong orphans;
+    final LongAdder snapshotFailures;
+    final AtomicLong height;
+    final AtomicLong utxoSize;
+    final AtomicLong mempoolSize;
+    /** one counter per {@code BlockChain.Status}, by ordinal */
+    private final LongAdder[] results;
+
+    ChainMetrics(Metrics metrics) {
+        add = metrics.histogram("block.add");
+        structure = metrics.histogram("block.structure");
+        lookup = metrics.histogram("block.lookup");
+        utxoCopy = metrics.histogram("block.utxo_copy");
+        validate = metrics.histogram("block.validate");
+        signatures = metrics.histogram("block.signatures");
+        commit = metrics.histogram("block.commit");
+        prune = metrics.histogram("block.prune");
+        reorgDepth = metrics.histogram("block.reorg_depth");
+        reorgs = metrics.counter("block.reorgs");
+        orphansConnected = metrics.counter("block.orphans_connected");
+        orphans = metrics.gauge("block.orphans");
+        snapshotFailures = metrics.counter("store.snapshot_failures");
+        height = metrics.gauge("chain.height");
+        utxoSize = metrics.gauge("chain.utxo_size");
+        mempoolSize = metrics.gauge("mempool.size");
+        BlockChain.Status[] statuses = BlockChain.Status.values();
+        results = new LongAdder[statuses.length];
+        for (BlockChain.Status s : statuses)
+            results[s.ordinal()] = metrics.counter(counterName(s));
+    }
+
+    /** @return the name of the counter of blocks that got {@code status} */
+    static String counterName(BlockChain.Status status) {
+        if (status == BlockChain.Status.ACCEPTED)
+            return "block.accepted";
+        return "block.rejected." + status.name().toLowerCase();
+    }
+
+    /** Counts a block that got {@code status} after being submitted at {@code start} */
+    void recordResult(BlockChain.Status status, long start) {
+        results[status.ordinal()].increment();
+        add.recordSince(start);
+    }
+}
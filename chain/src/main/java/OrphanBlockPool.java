@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Blocks whose previous block is not known yet, indexed by their own hash and by the hash of the
+ * block they are missing. When that block is added, {@link #removeChildren(byte[])} hands its
+ * waiting children over to be added in turn.
+ *
+ * <p>
+ * The pool holds at most {@code maxBlocks} blocks and {@code maxBytes} of raw blocks, and drops a
+ * block once it has waited {@code maxAgeMillis}. Blocks leave in arrival order: the expired ones
+ * whenever a block is added, then the oldest until the new one fits. A parent that never comes, or
+ * that is older than {@code BlockChain.CUT_OFF_AGE}, therefore costs at most one pool's worth of
+ * memory.
+ *
+ * <p>
+ * The pool is thread-safe; every method holds the pool's monitor.
+ */
+public class OrphanBlockPool {
+
+    public static final int DEFAULT_MAX_BLOCKS = 100;
+    public static final long DEFAULT_MAX_BYTES = 32L << 20;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 20 * 60 * 1000;
+
+    /** every block in the pool by hash, in arrival order */
+    private final LinkedHashMap<ByteArrayWrapper, Entry> H = new LinkedHashMap<ByteArrayWrapper, Entry>();
+    /** the blocks in the pool by the hash of their previous block */
+    private final HashMap<ByteArrayWrapper, ArrayList<Entry>> byParent = new HashMap<ByteArrayWrapper, ArrayList<Entry>>();
+    private final int maxBlocks;
+    private final long maxBytes;
+    private final long maxAgeNanos;
+    private long totalBytes;
+    private long evicted;
+
+    public OrphanBlockPool() {
+        this(DEFAULT_MAX_BLOCKS, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Creates an empty pool holding at most {@code maxBlocks} blocks and {@code maxBytes} of raw
+     * blocks, each for at most {@code maxAgeMillis}
+     */
+    public OrphanBlockPool(int maxBlocks, long maxBytes, long maxAgeMillis) {
+        this.maxBlocks = maxBlocks;
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = maxAgeMillis * 1000000L;
+    }
+
+    /**
+     * Adds {@code block}, which must have a previous block hash, to wait for its previous block
+     *
+     * @return true if {@code block} is in the pool afterwards; false if it has no hash or is larger
+     *         than the whole pool
+     */
+    public boolean addBlock(Block block) {
+        return addBlock(block, System.nanoTime());
+    }
+
+    /** Adds {@code block} like {@link #addBlock(Block)}, as if the time were {@code now} */
+    synchronized boolean addBlock(Block block, long now) {
+        evictExpired(now);
+        if (block.getHash() == null) {
+            return false;
+        }
+        ByteArrayWrapper hash = new ByteArrayWrapper(block.getHash());
+        if (H.containsKey(hash)) {
+            return true;
+        }
+        long size = block.rawBlockSize();
+        if (size > maxBytes || maxBlocks <= 0) {
+            return false;
+        }
+        while (H.size() >= maxBlocks || totalBytes + size > maxBytes) {
+            evict(H.values().iterator().next());
+        }
+        Entry e = new Entry(block, hash, new ByteArrayWrapper(block.getPrevBlockHash()), size, now);
+        H.put(hash, e);
+        ArrayList<Entry> siblings = byParent.get(e.parent);
+        if (siblings == null) {
+            siblings = new ArrayList<Entry>(1);
+            byParent.put(e.parent, siblings);
+        }
+        siblings.add(e);
+        totalBytes += size;
+        return true;
+    }
+
+    /**
+     * Removes the blocks waiting for the block of hash {@code prevBlockHash}
+     *
+     * @return the removed blocks, in arrival order
+     */
+    public synchronized List<Block> removeChildren(byte[] prevBlockHash) {
+        ArrayList<Entry> children = byParent.remove(new ByteArrayWrapper(prevBlockHash));
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<Block> blocks = new ArrayList<Block>(children.size());
+        for (Entry e : children) {
+            H.remove(e.hash);
+            totalBytes -= e.size;
+            blocks.add(e.block);
+        }
+        return blocks;
+    }
+
+    public synchronized boolean contains(byte[] blockHash) {
+        return H.containsKey(new ByteArrayWrapper(blockHash));
+    }
+
+    /** @return the number of blocks in the pool */
+    public synchronized int size() {
+        return H.size();
+    }
+
+    /** @return the total size of the raw blocks in the pool */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** @return the number of blocks dropped so far because they expired or did not fit */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    /** Drops the blocks that arrived {@code maxAgeNanos} or more before {@code now} */
+    private void evictExpired(long now) {
+        Iterator<Entry> it = H.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (now - e.arrived < maxAgeNanos) {
+                break;
+            }
+            it.remove();
+            unlinkFromParent(e);
+        }
+    }
+
+    private void evict(Entry e) {
+        H.remove(e.hash);
+        unlinkFromParent(e);
+    }
+
+    private void unlinkFromParent(Entry e) {
+        ArrayList<Entry> siblings = byParent.get(e.parent);
+        siblings.remove(e);
+        if (siblings.isEmpty()) {
+            byParent.remove(e.parent);
+        }
+        totalBytes -= e.size;
+        evicted++;
+    }
+
+    private static final class Entry {
+        final Block block;
+        final ByteArrayWrapper hash;
+        final ByteArrayWrapper parent;
+        final long size;
+        final long arrived;
+
+        Entry(Block block, ByteArrayWrapper hash, ByteArrayWrapper parent, long size, long arrived) {
+            this.block = block;
+            this.hash = hash;
+            this.parent = parent;
+            this.size = size;
+            this.arrived = arrived;
+        }
+    }
+}
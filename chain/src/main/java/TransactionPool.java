@@ -0,0 +1,467 @@
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Unconfirmed transactions, indexed by hash and by the outputs they spend. The spent-output index
+ * links each transaction to its children in the pool (the spenders of its outputs) and catches a
+ * double spend when it is inserted, rather than when the whole pool is validated. The pool holds
+ * at most {@code maxBytes} of raw transactions; beyond that the transactions with the lowest fee
+ * rate are evicted together with their descendants.
+ *
+ * <p>
+ * A transaction is checked for structure and for the signature of every input against the output
+ * it spends before it can enter the pool, so it cannot displace or evict anything unless it is
+ * valid on top of the pool and {@code utxoPool}. Signatures go through the default
+ * {@code SignatureCache}; transactions admitted through {@code TxBatchResult} were verified before
+ * and only cost a lookup here.
+ *
+ * <p>
+ * A transaction is only priced once every output it spends is known. Until then it waits outside
+ * the pool, in arrival order, and enters it when the transaction it misses an output of does (or
+ * is confirmed, see {@link #retryWaiting(byte[], UTXOPool)}); at most {@code maxWaiting}
+ * transactions wait, the oldest being dropped first.
+ *
+ * <p>
+ * The pool is thread-safe. Every method holds the pool's monitor for an in-memory index update
+ * only, as replacements and evictions can touch any entry; listeners are notified while it is held
+ * and must not call back into another pool. Callers that need several calls to see the same pool
+ * can synchronize on it.
+ */
+public class TransactionPool {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    public static final int DEFAULT_MAX_WAITING = 1000;
+
+    /** fee of a transaction some of whose inputs cannot be found yet */
+    private static final long MISSING = Long.MIN_VALUE;
+
+    /** Notified after a transaction enters or leaves the pool */
+    public interface Listener {
+        void transactionAdded(Transaction tx);
+
+        void transactionRemoved(Transaction tx);
+    }
+
+    private static final class Entry {
+        final Transaction tx;
+        final ByteArrayWrapper hash;
+        final long fee;
+        final long size;
+        final long seq;
+
+        Entry(Transaction tx, ByteArrayWrapper hash, long fee, long seq) {
+            this.tx = tx;
+            this.hash = hash;
+            this.fee = fee;
+            this.size = Math.max(1, tx.rawTx().length);
+            this.seq = seq;
+        }
+    }
+
+    private static final class Waiting {
+        final Transaction tx;
+        final ByteArrayWrapper hash;
+        /** hash of the transaction the first missing output belongs to */
+        final ByteArrayWrapper missing;
+
+        Waiting(Transaction tx, ByteArrayWrapper hash, ByteArrayWrapper missing) {
+            this.tx = tx;
+            this.hash = hash;
+            this.missing = missing;
+        }
+    }
+
+    /** lowest fee rate first, then oldest first */
+    private static final Comparator<Entry> BY_FEE_RATE = (a, b) -> {
+        int c = Amounts.compareRates(a.fee, a.size, b.fee, b.size);
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    };
+
+    private HashMap<ByteArrayWrapper, Entry> H;
+    private HashMap<UTXO, Entry> spentBy;
+    private TreeSet<Entry> byFeeRate;
+    /** transactions waiting for an output that cannot be found yet, by hash, oldest first */
+    private LinkedHashMap<ByteArrayWrapper, Waiting> waiting;
+    /** the waiting transactions by the hash of the transaction they miss an output of */
+    private HashMap<ByteArrayWrapper, List<Waiting>> waitingFor;
+    private final long maxBytes;
+    private final int maxWaiting;
+    private long totalBytes;
+    private long nextSeq;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public TransactionPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /** Creates an empty pool holding at most {@code maxBytes} of raw transactions */
+    public TransactionPool(long maxBytes) {
+        this(maxBytes, DEFAULT_MAX_WAITING);
+    }
+
+    /**
+     * Creates an empty pool holding at most {@code maxBytes} of raw transactions, with at most
+     * {@code maxWaiting} more waiting for outputs that cannot be found yet
+     */
+    public TransactionPool(long maxBytes, int maxWaiting) {
+        this.maxBytes = maxBytes;
+        this.maxWaiting = maxWaiting;
+        H = new HashMap<ByteArrayWrapper, Entry>();
+        spentBy = new HashMap<UTXO, Entry>();
+        byFeeRate = new TreeSet<Entry>(BY_FEE_RATE);
+        waiting = new LinkedHashMap<ByteArrayWrapper, Waiting>();
+        waitingFor = new HashMap<ByteArrayWrapper, List<Waiting>>();
+    }
+
+    public TransactionPool(TransactionPool txPool) {
+        maxBytes = txPool.maxBytes;
+        maxWaiting = txPool.maxWaiting;
+        synchronized (txPool) {
+            H = new HashMap<ByteArrayWrapper, Entry>(txPool.H);
+            spentBy = new HashMap<UTXO, Entry>(txPool.spentBy);
+            byFeeRate = new TreeSet<Entry>(txPool.byFeeRate);
+            totalBytes = txPool.totalBytes;
+            nextSeq = txPool.nextSeq;
+            waiting = new LinkedHashMap<ByteArrayWrapper, Waiting>(txPool.waiting);
+            waitingFor = new HashMap<ByteArrayWrapper, List<Waiting>>();
+            for (Map.Entry<ByteArrayWrapper, List<Waiting>> e : txPool.waitingFor.entrySet())
+                waitingFor.put(e.getKey(), new ArrayList<Waiting>(e.getValue()));
+        }
+    }
+
+    /** Registers {@code listener} for later changes; copies of this pool do not inherit it */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds {@code tx} with the fee it pays to outputs of transactions in the pool; see
+     * {@link #addTransaction(Transaction, UTXOPool)}
+     */
+    public boolean addTransaction(Transaction tx) {
+        return addTransaction(tx, null);
+    }
+
+    /**
+     * Adds {@code tx} to the pool. Its fee is the value of the outputs it spends, looked up among
+     * the pool transactions and in {@code utxoPool} (which may be null), minus the value of its own
+     * outputs. If some of those outputs cannot be found yet, {@code tx} waits outside the pool
+     * instead; the transactions waiting for {@code tx} are added along with it. A transaction that
+     * can never be valid, because it is malformed or unsigned, claims an output twice, names an
+     * output its pool parent does not have, has outputs worth more than its inputs or a signature
+     * that does not verify, is rejected.
+     *
+     * <p>
+     * If {@code tx} spends an output that a pool transaction already spends, it replaces the
+     * conflicting transactions and their descendants only if it pays a higher fee than all of them
+     * together, and is rejected otherwise.
+     *
+     * @return true if {@code tx} is in the pool afterwards
+     */
+    public synchronized boolean addTransaction(Transaction tx, UTXOPool utxoPool) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+        Entry entry = insert(tx, hash, utxoPool);
+        if (entry != null)
+            admitWaiting(hash, utxoPool);
+        evict();
+        return entry != null && H.get(hash) == entry;
+    }
+
+    /**
+     * Adds the transactions waiting for an output of the transaction with hash {@code txHash},
+     * which has just been confirmed, now that {@code utxoPool} holds its outputs
+     */
+    public synchronized void retryWaiting(byte[] txHash, UTXOPool utxoPool) {
+        admitWaiting(new ByteArrayWrapper(txHash), utxoPool);
+        evict();
+    }
+
+    /**
+     * Adds {@code tx} without evicting anything for room
+     *
+     * @return its entry, or null if it was rejected or has to wait
+     */
+    private Entry insert(Transaction tx, ByteArrayWrapper hash, UTXOPool utxoPool) {
+        Entry existing = H.get(hash);
+        if (existing != null)
+            return existing;
+        if (!BlockValidator.checkStructure(tx).isValid())
+            return null;
+
+        Transaction.Output[] spent = new Transaction.Output[tx.numInputs()];
+        long fee = computeFee(tx, utxoPool, spent);
+        if (fee == MISSING) {
+            addWaiting(tx, hash, utxoPool);
+            return null;
+        }
+        if (fee < 0)
+            return null;
+        for (int j = 0; j < spent.length; j++)
+            if (!BlockValidator.verifySignature(SignatureCache.getDefault(), tx, j, spent[j]))
+                return null;
+        LinkedHashSet<Entry> conflicts = new LinkedHashSet<Entry>();
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxHash == null)
+                continue;
+            Entry spender = spentBy.get(new UTXO(in.prevTxHash, in.outputIndex));
+            if (spender != null)
+                conflicts.add(spender);
+        }
+        if (!conflicts.isEmpty()) {
+            Set<Entry> replaced = withDescendants(conflicts);
+            long replacedFee = 0;
+            for (Entry e : replaced)
+                replacedFee = Amounts.saturatedAdd(replacedFee, e.fee);
+            if (fee <= replacedFee)
+                return null;
+            for (Entry e : replaced)
+                remove(e);
+        }
+
+        Entry entry = new Entry(tx, hash, fee, nextSeq++);
+        H.put(hash, entry);
+        for (Transaction.Input in : tx.getInputs())
+            if (in.prevTxHash != null)
+                spentBy.put(new UTXO(in.prevTxHash, in.outputIndex), entry);
+        byFeeRate.add(entry);
+        totalBytes += entry.size;
+        for (Listener listener : listeners)
+            listener.transactionAdded(tx);
+        return entry;
+    }
+
+    /** Evicts the transactions with the lowest fee rate, with their descendants, until the rest fit */
+    private void evict() {
+        while (totalBytes > maxBytes && !byFeeRate.isEmpty()) {
+            Set<Entry> evicted = withDescendants(Collections.singleton(byFeeRate.first()));
+            for (Entry e : evicted)
+                remove(e);
+        }
+    }
+
+    /**
+     * Adds the transactions waiting for the transaction with hash {@code parent}, then those
+     * waiting for them, and so on
+     */
+    private void admitWaiting(ByteArrayWrapper parent, UTXOPool utxoPool) {
+        ArrayDeque<ByteArrayWrapper> parents = new ArrayDeque<ByteArrayWrapper>();
+        parents.add(parent);
+        while (!parents.isEmpty()) {
+            List<Waiting> children = waitingFor.remove(parents.poll());
+            if (children == null)
+                continue;
+            for (Waiting w : children) {
+                waiting.remove(w.hash);
+                if (insert(w.tx, w.hash, utxoPool) != null)
+                    parents.add(w.hash);
+            }
+        }
+    }
+
+    /** Sets {@code tx} aside until the first output it spends that cannot be found yet shows up */
+    private void addWaiting(Transaction tx, ByteArrayWrapper hash, UTXOPool utxoPool) {
+        if (maxWaiting <= 0 || waiting.containsKey(hash))
+            return;
+        ByteArrayWrapper missing = null;
+        for (Transaction.Input in : tx.getInputs()) {
+            if (!H.containsKey(new ByteArrayWrapper(in.prevTxHash))
+                    && (utxoPool == null || !utxoPool.contains(in.prevTxHash, in.outputIndex))) {
+                missing = new ByteArrayWrapper(in.prevTxHash);
+                break;
+            }
+        }
+        if (waiting.size() >= maxWaiting)
+            removeWaiting(waiting.values().iterator().next());
+        Waiting w = new Waiting(tx, hash, missing);
+        waiting.put(hash, w);
+        waitingFor.computeIfAbsent(missing, k -> new ArrayList<Waiting>(1)).add(w);
+    }
+
+    private void removeWaiting(Waiting w) {
+        waiting.remove(w.hash);
+        List<Waiting> siblings = waitingFor.get(w.missing);
+        siblings.remove(w);
+        if (siblings.isEmpty())
+            waitingFor.remove(w.missing);
+    }
+
+    /**
+     * Adds every transaction of {@code txs}, in order, like {@link #addTransaction(Transaction,
+     * UTXOPool)} but holding the pool's monitor once for the whole batch.
+     *
+     * @return for each transaction, whether it is in the pool once the whole batch has been added
+     */
+    public synchronized boolean[] addTransactions(List<Transaction> txs, UTXOPool utxoPool) {
+        for (Transaction tx : txs)
+            addTransaction(tx, utxoPool);
+        boolean[] added = new boolean[txs.size()];
+        for (int i = 0; i < added.length; i++)
+            added[i] = getTransaction(txs.get(i).getHash()) == txs.get(i);
+        return added;
+    }
+
+    /** Removes the transaction with hash {@code txHash}, leaving its descendants in the pool */
+    public synchronized void removeTransaction(byte[] txHash) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(txHash);
+        Entry entry = H.get(hash);
+        if (entry != null)
+            remove(entry);
+    }
+
+    /**
+     * Removes {@code tx}, which has just been confirmed in a block, together with every pool
+     * transaction that spends one of the outputs {@code tx} spent and all of their descendants,
+     * which can no longer become valid. Takes time proportional to the number of removed
+     * transactions.
+     */
+    public synchronized void removeConfirmed(Transaction tx) {
+        removeTransaction(tx.getHash());
+        Waiting w = waiting.get(new ByteArrayWrapper(tx.getHash()));
+        if (w != null)
+            removeWaiting(w);
+        LinkedHashSet<Entry> conflicts = new LinkedHashSet<Entry>();
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxHash == null)
+                continue;
+            Entry spender = spentBy.get(new UTXO(in.prevTxHash, in.outputIndex));
+            if (spender != null)
+                conflicts.add(spender);
+        }
+        if (!conflicts.isEmpty())
+            for (Entry e : withDescendants(conflicts))
+                remove(e);
+    }
+
+    /**
+     * Removes the pool transaction spending {@code utxo}, an output that no longer exists, together
+     * with all of its descendants
+     */
+    public synchronized void removeSpender(UTXO utxo) {
+        Entry spender = spentBy.get(utxo);
+        if (spender != null)
+            for (Entry e : withDescendants(Collections.singleton(spender)))
+                remove(e);
+    }
+
+    public synchronized Transaction getTransaction(byte[] txHash) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(txHash);
+        Entry entry = H.get(hash);
+        return entry == null ? null : entry.tx;
+    }
+
+    /** @return the pool transaction spending {@code utxo}, or null if there is none */
+    public synchronized Transaction getSpendingTransaction(UTXO utxo) {
+        Entry entry = spentBy.get(utxo);
+        return entry == null ? null : entry.tx;
+    }
+
+    public synchronized ArrayList<Transaction> getTransactions() {
+        ArrayList<Transaction> T = new ArrayList<Transaction>();
+        for (Entry entry : H.values())
+            T.add(entry.tx);
+        return T;
+    }
+
+    /** @return the number of transactions in the pool */
+    public synchronized int size() {
+        return H.size();
+    }
+
+    /** @return the number of transactions waiting for an output that cannot be found yet */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /** @return the total raw size of the transactions in the pool */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Looks up the outputs {@code tx} spends into {@code spent}
+     *
+     * @return the fee of {@code tx}, saturated at the {@code long} bounds; {@code MISSING} if an
+     *         output it spends is neither in the pool nor in {@code utxoPool}, and a negative value
+     *         if it can never be valid
+     */
+    private long computeFee(Transaction tx, UTXOPool utxoPool, Transaction.Output[] spent) {
+        long fee = 0;
+        boolean missing = false;
+        for (int j = 0; j < tx.numInputs(); j++) {
+            Transaction.Input in = tx.getInput(j);
+            if (in.prevTxHash == null)
+                return -1;
+            Entry parent = H.get(new ByteArrayWrapper(in.prevTxHash));
+            if (parent != null) {
+                // the outputs of a pool transaction are all known
+                if (in.outputIndex < 0 || in.outputIndex >= parent.tx.numOutputs())
+                    return -1;
+                spent[j] = parent.tx.getOutput(in.outputIndex);
+            } else if (utxoPool != null) {
+                spent[j] = utxoPool.getTxOutput(in.prevTxHash, in.outputIndex);
+            }
+            if (spent[j] == null)
+                missing = true;
+            else
+                fee = Amounts.saturatedAdd(fee, spent[j].value);
+        }
+        // an output claimed twice would be counted twice
+        if (TxHandler.isCoinConsumedMultipleTimes(tx))
+            return -1;
+        if (missing)
+            return MISSING;
+        for (Transaction.Output out : tx.getOutputs())
+            fee = Amounts.saturatedAdd(fee, -out.value);
+        return fee;
+    }
+
+    /** @return {@code roots} and everything spending their outputs, directly or not */
+    private Set<Entry> withDescendants(Set<Entry> roots) {
+        LinkedHashSet<Entry> result = new LinkedHashSet<Entry>();
+        ArrayDeque<Entry> queue = new ArrayDeque<Entry>(roots);
+        while (!queue.isEmpty()) {
+            Entry e = queue.poll();
+            if (!result.add(e))
+                continue;
+            byte[] txHash = e.tx.getHash();
+            for (int i = 0; i < e.tx.numOutputs(); i++) {
+                Entry child = spentBy.get(new UTXO(txHash, i));
+                if (child != null)
+                    queue.add(child);
+            }
+        }
+        return result;
+    }
+
+    private void remove(Entry entry) {
+        if (H.get(entry.hash) != entry)
+            return;
+        H.remove(entry.hash);
+        for (Transaction.Input in : entry.tx.getInputs()) {
+            if (in.prevTxHash == null)
+                continue;
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            if (spentBy.get(utxo) == entry)
+                spentBy.remove(utxo);
+        }
+        byFeeRate.remove(entry);
+        totalBytes -= entry.size;
+        for (Listener listener : listeners)
+            listener.transactionRemoved(entry.tx);
+    }
+}
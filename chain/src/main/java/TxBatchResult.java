@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcome of submitting a batch of transactions to a {@code TransactionPool} through
+ * {@link #admit}. The batch is validated as a whole before anything is inserted: every transaction
+ * must be well formed, claim outputs that are in the UTXO set of the chain tip, created by a pool
+ * transaction or created by another accepted transaction of the batch, and sign every input for the
+ * output it claims. Signatures are verified in parallel. The transactions that pass go into the pool
+ * in one step, parents first; each of the others gets the reason it was rejected.
+ *
+ * <p>
+ * Claiming an output that a pool transaction or an earlier transaction of the batch already claims
+ * is not an error here: the pool decides whether such a transaction replaces the ones it conflicts
+ * with.
+ *
+ * <p>
+ * The transactions of every batch are counted by status in the shared {@link Metrics} registry as
+ * {@code tx.batch.<status>}.
+ */
+public class TxBatchResult {
+
+    /**
+     * What happened to one transaction of the batch. The codes from {@code MALFORMED} to
+     * {@code BAD_SIGNATURE} are those of {@link ValidationResult}.
+     */
+    public enum Status {
+        /** in the pool */
+        ACCEPTED,
+        /** already in the pool, or earlier in the batch */
+        DUPLICATE,
+        /** no hash, or an input without a previous transaction hash */
+        MALFORMED,
+        /** an output value that is not positive */
+        NEGATIVE_OUTPUT,
+        /** claims the same output twice */
+        DOUBLE_CLAIM,
+        /** claims an output that is neither at the tip, in the pool nor created by the batch */
+        MISSING_INPUT,
+        /** creates more value than it claims */
+        INSUFFICIENT_INPUT,
+        /** an input is unsigned or its signature does not verify */
+        BAD_SIGNATURE,
+        /** valid, but the pool turned it down as a replacement paying too little, or evicted it */
+        NOT_ADMITTED;
+
+        /** @return the status of a transaction that failed a check with {@code result} */
+        static Status of(ValidationResult result) {
+            return valueOf(result.name());
+        }
+    }
+
+    /** one counter per status, by ordinal */
+    private static final LongAdder[] COUNTERS = new LongAdder[Status.values().length];
+
+    static {
+        for (Status s : Status.values())
+            COUNTERS[s.ordinal()] = Metrics.getDefault().counter("tx.batch." + s.name().toLowerCase());
+    }
+
+    private final Transaction[] txs;
+    private final Status[] status;
+    private final List<Transaction> accepted = new ArrayList<Transaction>();
+
+    private TxBatchResult(Transaction[] txs) {
+        this.txs = txs;
+        this.status = new Status[txs.length];
+    }
+
+    /**
+     * Validates {@code candidates} against {@code utxoPool}, the UTXO set of the chain tip, and the
+     * transactions of {@code txPool}, then adds the valid ones to {@code txPool}. The pool may change
+     * meanwhile; transactions are validated against what it held when they were looked at.
+     *
+     * @param verifier pool used to run the checks, or null to run them serially
+     * @param sigCache cache to look signatures up in, or null
+     */
+    public static TxBatchResult admit(TransactionPool txPool, UTXOPool utxoPool, Collection<Transaction> candidates,
+            ForkJoinPool verifier, SignatureCache sigCache) {
+        TxBatchResult result = new TxBatchResult(candidates.toArray(new Transaction[0]));
+        Transaction[] txs = result.txs;
+        int n = txs.length;
+
+        // structure, in parallel across transactions
+        ValidationResult[] structure = new ValidationResult[n];
+        BlockValidator.forEach(verifier, n, i -> structure[i] = BlockValidator.checkStructure(txs[i]));
+        long[] outputSums = new long[n];
+        ArrayList<Integer> wellFormed = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (!structure[i].isValid()) {
+                result.status[i] = Status.of(structure[i]);
+            } else {
+                outputSums[i] = TxHandler.outputSum(txs[i]);
+                wellFormed.add(i);
+            }
+        }
+
+        // claimed outputs and values, parents first
+        Transaction[] candidateTxs = new Transaction[wellFormed.size()];
+        for (int k = 0; k < candidateTxs.length; k++)
+            candidateTxs[k] = txs[wellFormed.get(k)];
+        int[] order = BlockTemplate.topologicalOrder(candidateTxs);
+        HashMap<ByteArrayWrapper, Integer> passed = new HashMap<ByteArrayWrapper, Integer>();
+        Transaction.Output[][] spent = new Transaction.Output[n][];
+        int[] ordered = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            int i = wellFormed.get(order[k]);
+            ordered[k] = i;
+            Transaction tx = txs[i];
+            ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+            if (passed.containsKey(hash) || txPool.getTransaction(tx.getHash()) != null) {
+                result.status[i] = Status.DUPLICATE;
+                continue;
+            }
+            spent[i] = new Transaction.Output[tx.numInputs()];
+            long inputSum = 0;
+            for (int j = 0; j < tx.numInputs() && result.status[i] == null; j++) {
+                Transaction.Input in = tx.getInput(j);
+                Transaction.Output out = findOutput(in, txs, passed, txPool, utxoPool);
+                if (out == null)
+                    result.status[i] = Status.MISSING_INPUT;
+                else
+                    inputSum = Amounts.saturatedAdd(inputSum, (spent[i][j] = out).value);
+            }
+            if (result.status[i] == null && outputSums[i] > inputSum)
+                result.status[i] = Status.INSUFFICIENT_INPUT;
+            if (result.status[i] == null)
+                passed.put(hash, i);
+        }
+
+        // signatures, in parallel across inputs
+        int total = 0;
+        for (int i : passed.values())
+            total += txs[i].numInputs();
+        int[] txOf = new int[total];
+        int[] inputOf = new int[total];
+        int b = 0;
+        for (int i : passed.values()) {
+            for (int j = 0; j < txs[i].numInputs(); j++, b++) {
+                txOf[b] = i;
+                inputOf[b] = j;
+            }
+        }
+        boolean[] valid = new boolean[total];
+        BlockValidator.forEach(verifier, total, k -> valid[k] = BlockValidator.verifySignature(sigCache,
+                txs[txOf[k]], inputOf[k], spent[txOf[k]][inputOf[k]]));
+        for (b = 0; b < total; b++) {
+            if (!valid[b])
+                result.status[txOf[b]] = Status.BAD_SIGNATURE;
+        }
+
+        // a transaction whose parent in the batch failed has nothing left to claim
+        List<Transaction> admitted = new ArrayList<Transaction>();
+        List<Integer> admittedIndex = new ArrayList<Integer>();
+        for (int i : ordered) {
+            if (result.status[i] != null)
+                continue;
+            for (Transaction.Input in : txs[i].getInputs()) {
+                Integer parent = passed.get(new ByteArrayWrapper(in.prevTxHash));
+                if (parent != null && result.status[parent] != null)
+                    result.status[i] = Status.MISSING_INPUT;
+            }
+            if (result.status[i] != null)
+                continue;
+            admitted.add(txs[i]);
+            admittedIndex.add(i);
+        }
+
+        boolean[] added = txPool.addTransactions(admitted, utxoPool);
+        for (int k = 0; k < added.length; k++) {
+            int i = admittedIndex.get(k);
+            result.status[i] = added[k] ? Status.ACCEPTED : Status.NOT_ADMITTED;
+            if (added[k])
+                result.accepted.add(txs[i]);
+        }
+        for (Status s : result.status)
+            COUNTERS[s.ordinal()].increment();
+        return result;
+    }
+
+    /**
+     * @return the output {@code in} claims, looked up among the transactions of the batch that passed
+     *         so far, in the pool and at the tip, or null if there is none
+     */
+    private static Transaction.Output findOutput(Transaction.Input in, Transaction[] txs,
+            HashMap<ByteArrayWrapper, Integer> passed, TransactionPool txPool, UTXOPool utxoPool) {
+        Integer parent = passed.get(new ByteArrayWrapper(in.prevTxHash));
+        Transaction tx = parent != null ? txs[parent] : txPool.getTransaction(in.prevTxHash);
+        if (tx != null)
+            return in.outputIndex >= 0 && in.outputIndex < tx.numOutputs() ? tx.getOutput(in.outputIndex) : null;
+        return utxoPool.getTxOutput(in.prevTxHash, in.outputIndex);
+    }
+
+    /** @return the number of transactions in the batch */
+    public int size() {
+        return txs.length;
+    }
+
+    /** @return what happened to the transaction at {@code index} in the order it was submitted */
+    public Status getStatus(int index) {
+        return status[index];
+    }
+
+    /** @return the transactions that are in the pool, parents first */
+    public List<Transaction> getAccepted() {
+        return Collections.unmodifiableList(accepted);
+    }
+
+    /** @return the number of transactions that got {@code s} */
+    public int count(Status s) {
+        int count = 0;
+        for (Status t : status) {
+            if (t == s)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,1123 @@
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.ReflectionException;
+
+
+public class BlockChainTest {
+    static KeyPair kpAlice;
+    static KeyPair kpBob;
+    static KeyPair kpCal;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+            kpAlice = kpg.generateKeyPair();
+            kpBob = kpg.generateKeyPair();
+            kpCal = kpg.generateKeyPair();
+        }
+        catch(GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Test whether blockchain can identify invalid transactions.
+     */
+    @Test
+    public void testValidTxs() {
+        // initialize the genesis block, the coinbase transaction would go to Alice
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        // add genesis block into block chain, and initialize the block handler
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // transaction tx, which is invalid (signed by Bob, but should be by Alice)
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+
+        // Sign for tx
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpBob.getPrivate());
+            sig.update(tx.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx.getInput(0).addSignature(sig1);
+        tx.finalize();
+
+        // create a new block added by Cal
+        Block block = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        block.addTransaction(tx);
+        block.finalize();
+
+        assertFalse(blockHandler.processBlock(block));
+
+        // transaction tx1, which is valid
+        Transaction tx1 = new Transaction();
+        tx1.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+
+        // Sign for tx1
+        byte[] sig2 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig2 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig2);
+        tx1.finalize();
+
+        // create a new block added by Cal
+        Block block1 = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        block1.addTransaction(tx1);
+        block1.finalize();
+
+        assertTrue(blockHandler.processBlock(block1));
+    }
+
+    /**
+     * Test whether the previous block hash of the block is correct.
+     */
+    @Test
+    public void testCorrectPrevBlockHash() {
+        // initialize the genesis block, the coinbase transaction would go to Alice
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        // add genesis block into block chain, and initialize the block handler
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // create a new block with correct hash value
+        byte[] genesisBlockHash = genesisBlock.getHash();
+        Block block1 = new Block(genesisBlockHash , kpCal.getPublic());
+        block1.finalize();
+
+        assertTrue(blockHandler.processBlock(block1));
+
+        // wrong prevBlockHash
+        byte[] wrong_hash = Arrays.copyOf(genesisBlockHash, genesisBlockHash.length);
+        wrong_hash[0] *= 0.5;
+
+        // create a new block with incorrect hash value
+        Block block2 = new Block(wrong_hash, kpCal.getPublic());
+        block2.finalize();
+
+        assertFalse(blockHandler.processBlock(block2));
+    }
+
+    /**
+     * Test whether previous block hash value is in coincidence with PrevBlockHash.
+     */
+    @Test
+    public void testEqualHash() {
+        // initialize the genesis block, the coinbase transaction would go to Alice
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        // add genesis block into block chain, and initialize the block handler
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // transaction tx, which is invalid (signed by Bob, but should be by Alice)
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+
+        // Sign for tx
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx.getInput(0).addSignature(sig1);
+        tx.finalize();
+
+        // create a new block added by Cal
+        Block block = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        block.addTransaction(tx);
+        block.finalize();
+        // the streamed hash matches the hash of the built raw block
+        assertArrayEquals(Crypto.sha256().digest(block.getRawBlock()), block.getHash());
+
+        blockHandler.processBlock(block);
+
+        // create a new block by Alice
+        Block block1 = blockHandler.createBlock(kpAlice.getPublic());
+
+        assertEquals(block1.getPrevBlockHash(), block.getHash());
+    }
+
+    /**
+     * Test whether the block storage is well-behaved.
+     */
+    @Test
+    public void testStorage() {
+
+        int num_of_blocks_in_chain = 11;
+
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        for (int i = 0; i < num_of_blocks_in_chain; i++) {
+            blockHandler.createBlock(kpBob.getPublic());
+        }
+
+        assertTrue(blockChain.getOldestBlockHeight() == num_of_blocks_in_chain+1-8);
+    }
+
+    /**
+     * Test whether blocks more than CUT_OFF_AGE - 2 heights below the max height are dropped while
+     * newer ones stay, across side branches and after the height buckets wrap around.
+     */
+    @Test
+    public void testPruning() {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // main[h] is the main branch block at height h; alternate the miners so coinbases differ
+        ArrayList<Block> main = new ArrayList<Block>(Arrays.asList(null, genesisBlock));
+        KeyPair[] miners = { kpBob, kpAlice };
+        for (int i = 0; i < 20; i++) {
+            main.add(blockHandler.createBlock(miners[i % miners.length].getPublic()));
+        }
+        assertSame(main.get(21), blockChain.getMaxHeightBlock());
+        assertEquals(21 - BlockChain.CUT_OFF_AGE + 2, blockChain.getOldestBlockHeight());
+
+        Block newest = null;
+        for (int h = 1; h <= 20; h++) {
+            Block side = new Block(main.get(h).getHash(), kpCal.getPublic());
+            side.finalize();
+            BlockChain.Status expected = h < blockChain.getOldestBlockHeight()
+                    ? BlockChain.Status.UNKNOWN_PARENT
+                    : BlockChain.Status.ACCEPTED;
+            assertEquals("height " + h, expected, blockChain.submitBlock(side));
+            newest = side;
+        }
+        assertSame(main.get(21), blockChain.getMaxHeightBlock());
+
+        // the side block at height 21 goes once the main branch is 9 blocks further
+        for (int i = 0; i < 9; i++) {
+            main.add(blockHandler.createBlock(miners[i % miners.length].getPublic()));
+        }
+        Block late = new Block(newest.getHash(), kpCal.getPublic());
+        late.finalize();
+        assertEquals(BlockChain.Status.UNKNOWN_PARENT, blockChain.submitBlock(late));
+        Block kept = new Block(main.get(22).getHash(), kpCal.getPublic());
+        kept.finalize();
+        assertEquals(BlockChain.Status.ACCEPTED, blockChain.submitBlock(kept));
+    }
+
+    /**
+     * Test whether sibling blocks keep independent UTXO pools although they share their parent's.
+     */
+    @Test
+    public void testForkUTXOIsolation() {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // the same coinbase output is spent on two forks
+        Transaction tx1 = new Transaction();
+        tx1.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        Transaction tx2 = new Transaction();
+        tx2.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx2.addOutput(20, kpCal.getPublic());
+
+        // Sign for tx1 and tx2
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            tx1.getInput(0).addSignature(sig.sign());
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx2.getRawDataToSign(0));
+            tx2.getInput(0).addSignature(sig.sign());
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.finalize();
+        tx2.finalize();
+
+        Block block1 = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        block1.addTransaction(tx1);
+        block1.finalize();
+        assertTrue(blockHandler.processBlock(block1));
+
+        Block block2 = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        block2.addTransaction(tx2);
+        block2.finalize();
+        assertTrue(blockHandler.processBlock(block2));
+
+        // block1 stays the max height block, its pool only knows tx1's output
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        assertTrue(utxoPool.contains(new UTXO(tx1.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(tx2.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(genesisBlock.getCoinbase().getHash(), 0)));
+    }
+
+    /**
+     * Test whether a block created from the pool holds a child transaction together with its parent.
+     */
+    @Test
+    public void testChildAndParentInCreatedBlock() {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // Alice pays Bob, Bob pays Cal out of that payment
+        Transaction parent = new Transaction();
+        parent.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        parent.addOutput(10, kpBob.getPublic());
+        Transaction child = new Transaction();
+
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(parent.getRawDataToSign(0));
+            parent.getInput(0).addSignature(sig.sign());
+            parent.finalize();
+
+            child.addInput(parent.getHash(), 0);
+            child.addOutput(5, kpCal.getPublic());
+            sig.initSign(kpBob.getPrivate());
+            sig.update(child.getRawDataToSign(0));
+            child.getInput(0).addSignature(sig.sign());
+            child.finalize();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+
+        // the child reaches the pool first
+        blockHandler.processTx(child);
+        blockHandler.processTx(parent);
+
+        Block block = blockHandler.createBlock(kpAlice.getPublic());
+        assertNotNull(block);
+        assertEquals(2, block.getTransactions().size());
+        assertSame(parent, block.getTransaction(0));
+        assertSame(child, block.getTransaction(1));
+        assertTrue(blockHandler.getLastTemplate().getOrphans().isEmpty());
+    }
+
+    /**
+     * Test whether the UTXO pool follows a side branch that overtakes the max height block.
+     */
+    @Test
+    public void testReorganization() {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // the same coinbase output is spent on two branches; every block pays a different coinbase
+        // address, as equal coinbase transactions have equal hashes
+        Transaction tx1 = new Transaction();
+        tx1.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        Transaction tx2 = new Transaction();
+        tx2.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx2.addOutput(20, kpCal.getPublic());
+
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            tx1.getInput(0).addSignature(sig.sign());
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx2.getRawDataToSign(0));
+            tx2.getInput(0).addSignature(sig.sign());
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.finalize();
+        tx2.finalize();
+
+        Block mainBlock = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        mainBlock.addTransaction(tx1);
+        mainBlock.finalize();
+        assertTrue(blockHandler.processBlock(mainBlock));
+
+        Block sideBlock = new Block(genesisBlock.getHash(), kpBob.getPublic());
+        sideBlock.addTransaction(tx2);
+        sideBlock.finalize();
+        assertTrue(blockHandler.processBlock(sideBlock));
+        assertArrayEquals(mainBlock.getHash(), blockChain.getMaxHeightBlock().getHash());
+
+        // the side branch grows past the main branch
+        Block sideBlock2 = new Block(sideBlock.getHash(), kpAlice.getPublic());
+        sideBlock2.finalize();
+        assertTrue(blockHandler.processBlock(sideBlock2));
+        assertArrayEquals(sideBlock2.getHash(), blockChain.getMaxHeightBlock().getHash());
+
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        assertFalse(utxoPool.contains(new UTXO(tx1.getHash(), 0)));
+        assertTrue(utxoPool.contains(new UTXO(tx2.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(mainBlock.getCoinbase().getHash(), 0)));
+        assertTrue(utxoPool.contains(new UTXO(sideBlock.getCoinbase().getHash(), 0)));
+        assertTrue(utxoPool.contains(new UTXO(sideBlock2.getCoinbase().getHash(), 0)));
+
+        // a block on the old main branch still validates against that branch
+        Block mainBlock2 = new Block(mainBlock.getHash(), kpBob.getPublic());
+        mainBlock2.finalize();
+        assertTrue(blockHandler.processBlock(mainBlock2));
+        assertArrayEquals(sideBlock2.getHash(), blockChain.getMaxHeightBlock().getHash());
+    }
+
+
+    /**
+     * Test whether blocks submitted to a pipeline get the outcome they would get one after the other.
+     */
+    @Test
+    public void testBlockPipeline() throws Exception {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockPipeline pipeline = new BlockPipeline(blockChain);
+
+        Transaction tx1 = new Transaction();
+        tx1.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx1.getRawDataToSign(0));
+        tx1.getInput(0).addSignature(sig.sign());
+        tx1.finalize();
+        Block block1 = new Block(genesisBlock.getHash(), kpBob.getPublic());
+        block1.addTransaction(tx1);
+        block1.finalize();
+
+        // Bob's coinbase output signed by Alice
+        Transaction tx2 = new Transaction();
+        tx2.addInput(block1.getCoinbase().getHash(), 0);
+        tx2.addOutput(10, kpAlice.getPublic());
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx2.getRawDataToSign(0));
+        tx2.getInput(0).addSignature(sig.sign());
+        tx2.finalize();
+        Block badBlock = new Block(block1.getHash(), kpAlice.getPublic());
+        badBlock.addTransaction(tx2);
+        badBlock.finalize();
+
+        Block block2 = new Block(block1.getHash(), kpCal.getPublic());
+        block2.finalize();
+
+        Future<Boolean> added1 = pipeline.submit(block1);
+        Future<Boolean> addedBad = pipeline.submit(badBlock);
+        Future<Boolean> added2 = pipeline.submit(block2);
+        pipeline.drain();
+        assertTrue(added1.get());
+        assertFalse(addedBad.get());
+        assertTrue(added2.get());
+        assertArrayEquals(block2.getHash(), blockChain.getMaxHeightBlock().getHash());
+        assertTrue(blockChain.getMaxHeightUTXOPool().contains(new UTXO(tx1.getHash(), 0)));
+    }
+
+    /**
+     * Test whether transactions can be submitted and the tip read from other threads while blocks
+     * are being added.
+     */
+    @Test
+    public void testConcurrentReadersAndSubmitters() throws Exception {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.getInput(0).addSignature(sig.sign());
+        tx.finalize();
+
+        ExecutorService rpc = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<?>> calls = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                calls.add(rpc.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        blockHandler.processTx(tx);
+                        BlockChain.Tip tip = blockChain.getTip();
+                        UTXO coinbase = new UTXO(tip.getBlock().getCoinbase().getHash(), 0);
+                        assertTrue(tip.getUTXOPool().contains(coinbase));
+                    }
+                }));
+            }
+            // coinbases paying the same key have the same hash, so alternate the miners
+            KeyPair[] miners = { kpBob, kpCal, kpAlice };
+            for (int i = 0; i < 12; i++) {
+                assertNotNull(blockHandler.createBlock(miners[i % miners.length].getPublic()));
+            }
+            for (Future<?> call : calls) {
+                call.get();
+            }
+        } finally {
+            rpc.shutdown();
+        }
+        assertTrue(blockChain.getMaxHeightUTXOPool().contains(new UTXO(tx.getHash(), 0)));
+    }
+
+    /**
+     * Test whether a batch of transactions is checked before it reaches the pool, with a reason for
+     * every rejected transaction.
+     */
+    @Test
+    public void testProcessTxsBatch() throws Exception {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+        Signature sig = Signature.getInstance("SHA256withRSA");
+
+        // Alice pays Bob, Bob pays Cal out of that payment
+        Transaction parent = new Transaction();
+        parent.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        parent.addOutput(10, kpBob.getPublic());
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(parent.getRawDataToSign(0));
+        parent.getInput(0).addSignature(sig.sign());
+        parent.finalize();
+        Transaction child = new Transaction();
+        child.addInput(parent.getHash(), 0);
+        child.addOutput(5, kpCal.getPublic());
+        sig.initSign(kpBob.getPrivate());
+        sig.update(child.getRawDataToSign(0));
+        child.getInput(0).addSignature(sig.sign());
+        child.finalize();
+
+        // Bob's output signed by Cal
+        Transaction forged = new Transaction();
+        forged.addInput(parent.getHash(), 0);
+        forged.addOutput(5, kpCal.getPublic());
+        sig.initSign(kpCal.getPrivate());
+        sig.update(forged.getRawDataToSign(0));
+        forged.getInput(0).addSignature(sig.sign());
+        forged.finalize();
+
+        // an output nobody created
+        Transaction orphan = new Transaction();
+        orphan.addInput(forged.getHash(), 0);
+        orphan.addOutput(1, kpAlice.getPublic());
+        sig.initSign(kpCal.getPrivate());
+        sig.update(orphan.getRawDataToSign(0));
+        orphan.getInput(0).addSignature(sig.sign());
+        orphan.finalize();
+
+        TxBatchResult result = blockHandler.processTxs(Arrays.asList(child, parent, forged, orphan));
+        assertEquals(TxBatchResult.Status.ACCEPTED, result.getStatus(0));
+        assertEquals(TxBatchResult.Status.ACCEPTED, result.getStatus(1));
+        assertEquals(TxBatchResult.Status.BAD_SIGNATURE, result.getStatus(2));
+        assertEquals(TxBatchResult.Status.MISSING_INPUT, result.getStatus(3));
+        assertEquals(Arrays.asList(parent, child), result.getAccepted());
+        assertEquals(2, blockChain.getTransactionPool().size());
+    }
+
+    /**
+     * Test whether the transactions of a block that leaves the main branch go back into the
+     * transaction pool, and leave it again once confirmed on the new branch.
+     */
+    @Test
+    public void testReorgReadmitsTransactions() throws Exception {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.getInput(0).addSignature(sig.sign());
+        tx.finalize();
+
+        Block mainBlock = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        mainBlock.addTransaction(tx);
+        mainBlock.finalize();
+        assertTrue(blockHandler.processBlock(mainBlock));
+        assertEquals(0, blockChain.getTransactionPool().size());
+
+        // an empty side branch overtakes the main branch
+        Block sideBlock = new Block(genesisBlock.getHash(), kpBob.getPublic());
+        sideBlock.finalize();
+        assertTrue(blockHandler.processBlock(sideBlock));
+        assertEquals(0, blockChain.getTransactionPool().size());
+        Block sideBlock2 = new Block(sideBlock.getHash(), kpCal.getPublic());
+        sideBlock2.finalize();
+        assertTrue(blockHandler.processBlock(sideBlock2));
+        assertSame(tx, blockChain.getTransactionPool().getTransaction(tx.getHash()));
+
+        Block sideBlock3 = blockHandler.createBlock(kpAlice.getPublic());
+        assertNotNull(sideBlock3);
+        assertEquals(1, sideBlock3.getTransactions().size());
+        assertEquals(0, blockChain.getTransactionPool().size());
+    }
+
+    /**
+     * Test whether a block chain restarted from its block store comes back with the same tip and
+     * UTXO set, starting from a snapshot.
+     */
+    @Test
+    public void testRestartFromStore() throws IOException {
+        File dir = Files.createTempDirectory("blocks").toFile();
+        try {
+            Block genesisBlock = new Block(null, kpAlice.getPublic());
+            genesisBlock.finalize();
+            BlockStore store = new BlockStore(dir, 2);
+            BlockChain blockChain = new BlockChain(genesisBlock, store);
+            BlockHandler blockHandler = new BlockHandler(blockChain);
+
+            // coinbases paying the same key have the same hash, so alternate the miners
+            KeyPair[] miners = { kpBob, kpCal, kpAlice };
+            for (int i = 0; i < 15; i++) {
+                assertNotNull(blockHandler.createBlock(miners[i % miners.length].getPublic()));
+            }
+            Block tip = blockChain.getMaxHeightBlock();
+            ArrayList<UTXO> utxos = blockChain.getMaxHeightUTXOPool().getAllUTXO();
+            store.close();
+
+            store = new BlockStore(dir, 2);
+            assertNotNull(store.loadSnapshot());
+            BlockChain restarted = new BlockChain(genesisBlock, store);
+            assertArrayEquals(tip.getHash(), restarted.getMaxHeightBlock().getHash());
+            assertEquals(new HashSet<UTXO>(utxos), new HashSet<UTXO>(restarted.getMaxHeightUTXOPool().getAllUTXO()));
+            assertEquals(blockChain.getOldestBlockHeight(), restarted.getOldestBlockHeight());
+            assertNotNull(store.getBlock(genesisBlock.getHash()));
+            store.close();
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test the status codes of submitted blocks and the metrics the chain records.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        Metrics metrics = new Metrics();
+        BlockChain blockChain = new BlockChain(genesisBlock, metrics);
+
+        Block block1 = new Block(genesisBlock.getHash(), kpBob.getPublic());
+        block1.finalize();
+        assertEquals(BlockChain.Status.ACCEPTED, blockChain.submitBlock(block1));
+
+        Block orphan = new Block(new byte[32], kpBob.getPublic());
+        orphan.finalize();
+        assertEquals(BlockChain.Status.UNKNOWN_PARENT, blockChain.submitBlock(orphan));
+        assertEquals(BlockChain.Status.GENESIS, blockChain.submitBlock(genesisBlock));
+
+        // spends Alice's coinbase with Bob's signature
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpBob.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.addSignature(sig.sign(), 0);
+        tx.finalize();
+        Block forged = new Block(block1.getHash(), kpCal.getPublic());
+        forged.addTransaction(tx);
+        forged.finalize();
+        assertEquals(BlockChain.Status.BAD_SIGNATURE, blockChain.submitBlock(forged));
+
+        // a block on the side branch at the same height, then one more: a reorg of depth 1
+        Block side1 = new Block(genesisBlock.getHash(), kpCal.getPublic());
+        side1.finalize();
+        Block side2 = new Block(side1.getHash(), kpBob.getPublic());
+        side2.finalize();
+        assertTrue(blockChain.addBlock(side1));
+        assertTrue(blockChain.addBlock(side2));
+
+        assertEquals(3, metrics.getCount("block.accepted"));
+        assertEquals(1, metrics.getCount("block.rejected.unknown_parent"));
+        assertEquals(1, metrics.getCount("block.rejected.genesis"));
+        assertEquals(1, metrics.getCount("block.rejected.bad_signature"));
+        assertEquals(1, metrics.getCount("block.reorgs"));
+        assertEquals(1, metrics.histogram("block.reorg_depth").getMax());
+        assertEquals(6, metrics.histogram("block.add").getCount());
+        assertEquals(3, metrics.histogram("block.prune").getCount());
+        assertEquals(3, metrics.gauge("chain.height").get());
+        assertEquals(3, metrics.gauge("chain.utxo_size").get());
+
+        // the bean exposes no operations
+        try {
+            new MetricsMBean(metrics).invoke("reset", new Object[0], new String[0]);
+            fail("invoke should have thrown");
+        } catch (ReflectionException e) {
+            assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+        }
+    }
+
+    /**
+     * Test that blocks arriving before their previous block are added once it arrives, and that
+     * the orphan pool stays within its limits.
+     */
+    @Test
+    public void testOrphanBlocks() {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        Metrics metrics = new Metrics();
+        BlockChain blockChain = new BlockChain(genesisBlock, metrics);
+
+        Block block1 = new Block(genesisBlock.getHash(), kpBob.getPublic());
+        block1.finalize();
+        Block block2 = new Block(block1.getHash(), kpCal.getPublic());
+        block2.finalize();
+        Block block3 = new Block(block2.getHash(), kpBob.getPublic());
+        block3.finalize();
+
+        assertEquals(BlockChain.Status.UNKNOWN_PARENT, blockChain.submitBlock(block3));
+        assertEquals(BlockChain.Status.UNKNOWN_PARENT, blockChain.submitBlock(block2));
+        assertEquals(2, blockChain.getOrphanPool().size());
+        assertEquals(2, metrics.gauge("block.orphans").get());
+
+        assertTrue(blockChain.addBlock(block1));
+        assertArrayEquals(block3.getHash(), blockChain.getMaxHeightBlock().getHash());
+        assertEquals(4, blockChain.getTip().getHeight());
+        assertEquals(0, blockChain.getOrphanPool().size());
+        assertEquals(0, blockChain.getOrphanPool().getTotalBytes());
+        assertEquals(2, metrics.getCount("block.orphans_connected"));
+        assertEquals(0, metrics.gauge("block.orphans").get());
+
+        // at most two blocks, each for at most one second
+        OrphanBlockPool pool = new OrphanBlockPool(2, 1 << 20, 1000);
+        assertTrue(pool.addBlock(block1, 0));
+        assertTrue(pool.addBlock(block2, 0));
+        assertTrue(pool.addBlock(block3, 0));
+        assertFalse(pool.contains(block1.getHash()));
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getEvictedCount());
+
+        assertTrue(pool.addBlock(block1, 1000000000L));
+        assertEquals(1, pool.size());
+        assertEquals(3, pool.getEvictedCount());
+        assertEquals(Arrays.asList(block1), pool.removeChildren(genesisBlock.getHash()));
+        assertTrue(pool.removeChildren(block1.getHash()).isEmpty());
+        assertEquals(0, pool.getTotalBytes());
+    }
+
+    /**
+     * Test that a malformed transaction is kept out of the pool, and that a template built from it
+     * reports it as invalid instead of failing.
+     */
+    @Test
+    public void testMalformedTxInPool() throws GeneralSecurityException {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        // an input without a previous transaction hash
+        Transaction malformed = new Transaction();
+        malformed.addInput(null, 0);
+        malformed.addOutput(1, kpBob.getPublic());
+        malformed.addSignature(new byte[256], 0);
+        malformed.finalize();
+        blockHandler.processTx(malformed);
+        assertEquals(0, blockChain.getTransactionPool().size());
+        assertEquals(0, blockChain.getTransactionPool().getWaitingCount());
+
+        Transaction tx = new Transaction();
+        tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        tx.addOutput(10, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.addSignature(sig.sign(), 0);
+        tx.finalize();
+
+        BlockTemplate template = BlockTemplate.build(blockChain.getMaxHeightUTXOPool(),
+                Arrays.asList(malformed, tx), null);
+        assertEquals(1, template.getTransactions().size());
+        assertSame(tx, template.getTransactions().get(0));
+        assertEquals(1, template.getInvalid().size());
+        assertSame(malformed, template.getInvalid().get(0));
+
+        blockHandler.processTx(tx);
+        Block block = blockHandler.createBlock(kpBob.getPublic());
+        assertNotNull(block);
+        assertEquals(1, block.getTransactions().size());
+    }
+
+    /**
+     * @return a transaction paying {@code value} to Bob out of output {@code index} of {@code prev},
+     *         signed by Alice if that output is hers and by Bob otherwise
+     */
+    private static Transaction payment(Transaction prev, int index, long value) {
+        Transaction.Output out = index >= 0 ? prev.getOutput(index) : null;
+        KeyPair signer = out != null && out.address.equals(kpAlice.getPublic()) ? kpAlice : kpBob;
+        Transaction tx = new Transaction();
+        tx.addInput(prev.getHash(), index);
+        tx.addOutput(value, kpBob.getPublic());
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(signer.getPrivate());
+            sig.update(tx.getRawDataToSign(0));
+            tx.addSignature(sig.sign(), 0);
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    /**
+     * @return a finalized transaction signed by {@code signer} paying output {@code index} of
+     *         {@code prev} to Alice as outputs of {@code values}
+     */
+    private static Transaction signedPayment(KeyPair signer, Transaction prev, int index, long... values)
+            throws GeneralSecurityException {
+        Transaction tx = new Transaction();
+        tx.addInput(prev.getHash(), index);
+        for (long value : values)
+            tx.addOutput(value, kpAlice.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(signer.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.addSignature(sig.sign(), 0);
+        tx.finalize();
+        return tx;
+    }
+
+    /** @return a finalized transaction with outputs of {@code values} to Alice, and no inputs */
+    private static Transaction funding(long... values) {
+        Transaction tx = new Transaction();
+        for (long value : values)
+            tx.addOutput(value, kpAlice.getPublic());
+        tx.finalize();
+        return tx;
+    }
+
+    /** @return a UTXO pool holding every output of {@code tx} */
+    private static UTXOPool utxoPoolOf(Transaction tx) {
+        UTXOPool utxoPool = new UTXOPool();
+        for (int i = 0; i < tx.numOutputs(); i++)
+            utxoPool.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+        return utxoPool;
+    }
+
+    /**
+     * Test that the block assembler takes a low fee parent with a high fee child ahead of a medium
+     * fee transaction, keeps to the count and size limits, and skips a pool child that spends an
+     * output its parent does not have.
+     */
+    @Test
+    public void testBlockAssembler() throws GeneralSecurityException {
+        Block genesisBlock = new Block(null, kpAlice.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        BlockHandler blockHandler = new BlockHandler(blockChain);
+
+        long coin = 5 * Amounts.COIN;
+        Transaction fund = signedPayment(kpAlice, genesisBlock.getCoinbase(), 0, coin, coin, coin, coin, coin);
+        blockHandler.processTx(fund);
+        assertNotNull(blockHandler.createBlock(kpBob.getPublic()));
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+
+        Transaction parent = signedPayment(kpAlice, fund, 0, coin - 1);
+        Transaction child = signedPayment(kpAlice, parent, 0, coin - 1 - 1000);
+        Transaction medium = signedPayment(kpAlice, fund, 1, coin - 300);
+        Transaction low = signedPayment(kpAlice, fund, 2, coin - 2);
+        for (Transaction tx : Arrays.asList(low, child, medium, parent))
+            blockHandler.processTx(tx);
+        assertEquals(4, blockChain.getTransactionPool().size());
+        assertEquals(parent.getRawTx().length, medium.getRawTx().length);
+        assertEquals(child.getRawTx().length, low.getRawTx().length);
+        BlockAssembler assembler = new BlockAssembler(blockChain);
+
+        // a child spending a negative output index of a pool transaction can never be priced
+        Transaction bad = new Transaction();
+        bad.addInput(parent.getHash(), -1);
+        bad.addOutput(1, kpBob.getPublic());
+        bad.finalize();
+        assembler.transactionAdded(bad);
+
+        List<Transaction> all = assembler.buildTemplate(utxoPool, 100, Long.MAX_VALUE, null).getTransactions();
+        // the template lists the block in dependency order, not in the order of selection
+        assertEquals(4, all.size());
+        assertTrue(all.containsAll(Arrays.asList(parent, child, medium, low)));
+        assertTrue(all.indexOf(parent) < all.indexOf(child));
+        assertFalse(all.contains(bad));
+
+        List<Transaction> two = assembler.buildTemplate(utxoPool, 2, Long.MAX_VALUE, null).getTransactions();
+        assertEquals(2, two.size());
+        assertSame(parent, two.get(0));
+        assertSame(child, two.get(1));
+
+        // the package no longer fits, the next best transactions do
+        List<Transaction> one = assembler.buildTemplate(utxoPool, 1, Long.MAX_VALUE, null).getTransactions();
+        assertEquals(1, one.size());
+        assertSame(medium, one.get(0));
+
+        List<Transaction> three = assembler.buildTemplate(utxoPool, 3, Long.MAX_VALUE, null).getTransactions();
+        assertEquals(3, three.size());
+        assertFalse(three.contains(low));
+
+        // all four transactions have the same size: room for one leaves out the package
+        long size = parent.getRawTx().length + child.getRawTx().length;
+        List<Transaction> small = assembler.buildTemplate(utxoPool, 100, size - 1, null).getTransactions();
+        assertEquals(1, small.size());
+        assertSame(medium, small.get(0));
+        assertEquals(2, assembler.buildTemplate(utxoPool, 100, size, null).getTransactions().size());
+        assertFalse(assembler.buildTemplate(utxoPool, 100, size, null).getTransactions().contains(medium));
+        assertEquals(0, assembler.buildTemplate(utxoPool, 100, 1, null).getTransactions().size());
+    }
+
+    /**
+     * Test that the transaction pool detects double spends, replaces them only for a higher fee
+     * than the conflicting transactions and their descendants, and turns down transactions that
+     * can never be valid.
+     */
+    @Test
+    public void testTxPoolConflicts() {
+        Transaction fund = funding(100, 100);
+        UTXOPool utxoPool = utxoPoolOf(fund);
+        TransactionPool pool = new TransactionPool();
+
+        Transaction a = payment(fund, 0, 90);
+        assertTrue(pool.addTransaction(a, utxoPool));
+        // a lower fee for the same output
+        assertFalse(pool.addTransaction(payment(fund, 0, 95), utxoPool));
+        assertSame(a, pool.getSpendingTransaction(new UTXO(fund.getHash(), 0)));
+
+        Transaction child = payment(a, 0, 85);
+        assertTrue(pool.addTransaction(child, utxoPool));
+        // more than a alone, but not more than a and its child together
+        assertFalse(pool.addTransaction(payment(fund, 0, 88), utxoPool));
+        assertEquals(2, pool.size());
+
+        Transaction replacement = payment(fund, 0, 80);
+        assertTrue(pool.addTransaction(replacement, utxoPool));
+        assertNull(pool.getTransaction(a.getHash()));
+        assertNull(pool.getTransaction(child.getHash()));
+        assertSame(replacement, pool.getSpendingTransaction(new UTXO(fund.getHash(), 0)));
+        assertEquals(1, pool.size());
+
+        // outputs the pool parent does not have, and outputs worth more than the input
+        assertFalse(pool.addTransaction(payment(replacement, -1, 1), utxoPool));
+        assertFalse(pool.addTransaction(payment(replacement, 1, 1), utxoPool));
+        assertFalse(pool.addTransaction(payment(fund, 1, 101), utxoPool));
+        assertEquals(1, pool.size());
+        assertEquals(0, pool.getWaitingCount());
+    }
+
+    /**
+     * Test that only a valid transaction can replace a pool transaction: an unsigned one, one
+     * signed by the wrong key and one claiming the same output twice to inflate its fee are turned
+     * down and leave the pool as it was.
+     */
+    @Test
+    public void testTxPoolInvalidReplacement() throws GeneralSecurityException {
+        Transaction fund = funding(100, 100);
+        UTXOPool utxoPool = utxoPoolOf(fund);
+        TransactionPool pool = new TransactionPool();
+        Transaction a = payment(fund, 0, 90);
+        Transaction child = payment(a, 0, 85);
+        assertTrue(pool.addTransaction(a, utxoPool));
+        assertTrue(pool.addTransaction(child, utxoPool));
+
+        Transaction unsigned = new Transaction();
+        unsigned.addInput(fund.getHash(), 0);
+        unsigned.addOutput(1, kpBob.getPublic());
+        unsigned.finalize();
+        assertFalse(pool.addTransaction(unsigned, utxoPool));
+
+        Transaction forged = signedPayment(kpBob, fund, 0, 1);
+        assertFalse(pool.addTransaction(forged, utxoPool));
+
+        // counted twice, the input would pay a fee of 200 - 150
+        Transaction doubleClaim = new Transaction();
+        doubleClaim.addInput(fund.getHash(), 0);
+        doubleClaim.addInput(fund.getHash(), 0);
+        doubleClaim.addOutput(150, kpBob.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        for (int i = 0; i < 2; i++) {
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(doubleClaim.getRawDataToSign(i));
+            doubleClaim.addSignature(sig.sign(), i);
+        }
+        doubleClaim.finalize();
+        assertFalse(pool.addTransaction(doubleClaim, utxoPool));
+
+        assertEquals(2, pool.size());
+        assertSame(a, pool.getSpendingTransaction(new UTXO(fund.getHash(), 0)));
+        assertSame(child, pool.getTransaction(child.getHash()));
+        assertEquals(0, pool.getWaitingCount());
+
+        // a valid replacement paying more than both still goes through
+        assertTrue(pool.addTransaction(payment(fund, 0, 1), utxoPool));
+        assertEquals(1, pool.size());
+    }
+
+    /**
+     * Test that a transaction spending an output that cannot be found waits outside the pool until
+     * the transaction creating it enters the pool or is confirmed.
+     */
+    @Test
+    public void testTxPoolWaiting() {
+        Transaction fund = funding(100);
+        UTXOPool utxoPool = utxoPoolOf(fund);
+        TransactionPool pool = new TransactionPool(TransactionPool.DEFAULT_MAX_BYTES, 2);
+
+        Transaction parent = payment(fund, 0, 90);
+        Transaction child = payment(parent, 0, 80);
+        Transaction grandchild = payment(child, 0, 70);
+        assertFalse(pool.addTransaction(grandchild, utxoPool));
+        assertFalse(pool.addTransaction(child, utxoPool));
+        assertEquals(0, pool.size());
+        assertEquals(2, pool.getWaitingCount());
+        assertTrue(pool.getTransactions().isEmpty());
+
+        assertTrue(pool.addTransaction(parent, utxoPool));
+        assertEquals(3, pool.size());
+        assertEquals(0, pool.getWaitingCount());
+        assertSame(grandchild, pool.getSpendingTransaction(new UTXO(child.getHash(), 0)));
+
+        // confirmed later on
+        Transaction confirmed = funding(50);
+        Transaction spender = payment(confirmed, 0, 40);
+        assertFalse(pool.addTransaction(spender, utxoPool));
+        pool.retryWaiting(confirmed.getHash(), utxoPoolOf(confirmed));
+        assertSame(spender, pool.getTransaction(spender.getHash()));
+
+        // the oldest waiting transaction is dropped first
+        Transaction unknown = funding(60);
+        Transaction first = payment(unknown, 0, 10);
+        Transaction second = payment(unknown, 0, 20);
+        Transaction third = payment(unknown, 0, 30);
+        pool.addTransaction(first, utxoPool);
+        pool.addTransaction(second, utxoPool);
+        pool.addTransaction(third, utxoPool);
+        assertEquals(2, pool.getWaitingCount());
+        pool.retryWaiting(unknown.getHash(), utxoPoolOf(unknown));
+        assertNull(pool.getTransaction(first.getHash()));
+        // second and third spend the same output, and second pays the higher fee
+        assertSame(second, pool.getSpendingTransaction(new UTXO(unknown.getHash(), 0)));
+        assertEquals(0, pool.getWaitingCount());
+    }
+
+    /**
+     * Test that a full transaction pool evicts the transaction with the lowest fee rate together
+     * with its descendants.
+     */
+    @Test
+    public void testTxPoolEviction() {
+        Transaction fund = funding(100, 100, 100);
+        UTXOPool utxoPool = utxoPoolOf(fund);
+        Transaction low = payment(fund, 0, 99);
+        Transaction lowChild = payment(low, 0, 60);
+        Transaction high = payment(fund, 1, 50);
+        long size = low.getRawTx().length;
+        assertEquals(size, lowChild.getRawTx().length);
+        assertEquals(size, high.getRawTx().length);
+
+        TransactionPool pool = new TransactionPool(2 * size);
+        assertTrue(pool.addTransaction(low, utxoPool));
+        assertTrue(pool.addTransaction(lowChild, utxoPool));
+        assertEquals(2 * size, pool.getTotalBytes());
+        assertTrue(pool.addTransaction(high, utxoPool));
+        assertNull(pool.getTransaction(low.getHash()));
+        assertNull(pool.getTransaction(lowChild.getHash()));
+        assertEquals(1, pool.size());
+        assertEquals(size, pool.getTotalBytes());
+
+        // the lowest fee rate is the newcomer's own
+        assertTrue(pool.addTransaction(payment(fund, 0, 80), utxoPool));
+        assertFalse(pool.addTransaction(payment(fund, 2, 99), utxoPool));
+        assertEquals(2, pool.size());
+        assertSame(high, pool.getTransaction(high.getHash()));
+    }
+
+    /**
+     * Test that confirming a transaction removes the pool transactions spending the same outputs
+     * with their descendants but keeps its own descendants, and that removing the spender of an
+     * output removes its descendants too.
+     */
+    @Test
+    public void testTxPoolRemoval() {
+        Transaction fund = funding(100, 100, 100);
+        UTXOPool utxoPool = utxoPoolOf(fund);
+        TransactionPool pool = new TransactionPool();
+
+        Transaction a = payment(fund, 0, 90);
+        Transaction aChild = payment(a, 0, 80);
+        Transaction b = payment(fund, 1, 90);
+        Transaction bChild = payment(b, 0, 80);
+        Transaction c = payment(fund, 2, 90);
+        Transaction cChild = payment(c, 0, 80);
+        for (Transaction tx : Arrays.asList(a, aChild, b, bChild, c, cChild))
+            assertTrue(pool.addTransaction(tx, utxoPool));
+
+        // a block confirms another spend of a's output, and b itself
+        pool.removeConfirmed(payment(fund, 0, 70));
+        assertNull(pool.getTransaction(a.getHash()));
+        assertNull(pool.getTransaction(aChild.getHash()));
+        pool.removeConfirmed(b);
+        assertNull(pool.getTransaction(b.getHash()));
+        assertSame(bChild, pool.getTransaction(bChild.getHash()));
+        assertEquals(3, pool.size());
+
+        pool.removeSpender(new UTXO(fund.getHash(), 2));
+        assertNull(pool.getTransaction(c.getHash()));
+        assertNull(pool.getTransaction(cChild.getHash()));
+        assertEquals(1, pool.size());
+        assertEquals(bChild.getRawTx().length, pool.getTotalBytes());
+        assertNull(pool.getSpendingTransaction(new UTXO(fund.getHash(), 0)));
+    }
+}
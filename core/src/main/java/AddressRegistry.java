@@ -0,0 +1,119 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns recipient keys. Every distinct key gets one {@link Address} holding a compact id and the
+ * values outputs keep recomputing otherwise: the encodings of its public exponent and modulus (as
+ * {@code BigInteger.toByteArray}) and a hash code. Equal keys intern to the same {@code Address},
+ * so outputs compare recipients by reference, and a key decoded again from disk can be replaced by
+ * the instance already in memory.
+ *
+ * <p>
+ * The registry holds its addresses weakly: once no output refers to an address it is dropped, with
+ * its key, the next time a key is interned. Keys of outputs that were rejected, evicted or pruned
+ * therefore do not pile up, and two live outputs with equal keys still share one address. Ids are
+ * never reused.
+ */
+public class AddressRegistry {
+
+    /** An interned recipient key */
+    public static final class Address {
+        private final int id;
+        private final PublicKey key;
+        final byte[] exponent;
+        final byte[] modulus;
+        private final int hash;
+
+        private Address(int id, PublicKey key) {
+            RSAPublicKey rsa = (RSAPublicKey) key;
+            this.id = id;
+            this.key = key;
+            this.exponent = rsa.getPublicExponent().toByteArray();
+            this.modulus = rsa.getModulus().toByteArray();
+            this.hash = 31 * rsa.getPublicExponent().hashCode() + rsa.getModulus().hashCode();
+        }
+
+        /** @return the id of this address, unique within its registry */
+        public int getId() {
+            return id;
+        }
+
+        /** @return the key this address was first interned with */
+        public PublicKey getKey() {
+            return key;
+        }
+
+        /** @return the length of the exponent and modulus encodings together */
+        int encodedSize() {
+            return exponent.length + modulus.length;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final AddressRegistry DEFAULT = new AddressRegistry();
+
+    private final ConcurrentHashMap<PublicKey, Ref> byKey = new ConcurrentHashMap<PublicKey, Ref>();
+    /** where the references of collected addresses are queued, to be removed from {@code byKey} */
+    private final ReferenceQueue<Address> collected = new ReferenceQueue<Address>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /** @return the registry shared by all outputs */
+    public static AddressRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the address of {@code key}, registering it if no live address has an equal key
+     */
+    public Address intern(PublicKey key) {
+        Ref ref = byKey.get(key);
+        Address address = ref == null ? null : ref.get();
+        if (address != null)
+            return address;
+        purge();
+        // the new address must be strongly held until it is returned, or it could be collected
+        Address[] interned = new Address[1];
+        byKey.compute(key, (k, old) -> {
+            Address a = old == null ? null : old.get();
+            if (a != null) {
+                interned[0] = a;
+                return old;
+            }
+            interned[0] = new Address(nextId.getAndIncrement(), k);
+            return new Ref(interned[0], k, collected);
+        });
+        return interned[0];
+    }
+
+    /** @return the number of distinct keys interned and still referred to */
+    public int size() {
+        purge();
+        return byKey.size();
+    }
+
+    /** Removes the entries of addresses that have been collected */
+    private void purge() {
+        Reference<? extends Address> ref;
+        while ((ref = collected.poll()) != null) {
+            Ref r = (Ref) ref;
+            byKey.remove(r.key, r);
+        }
+    }
+
+    private static final class Ref extends WeakReference<Address> {
+        final PublicKey key;
+
+        Ref(Address address, PublicKey key, ReferenceQueue<Address> queue) {
+            super(address, queue);
+            this.key = key;
+        }
+    }
+}
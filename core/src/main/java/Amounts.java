@@ -0,0 +1,45 @@
+/**
+ * Amounts are whole numbers of the smallest unit, {@code COIN} of which make one coin, held in a
+ * {@code long}. Sums over untrusted outputs go through the checked operations here, and fee rates
+ * are compared exactly instead of being divided.
+ */
+public final class Amounts {
+
+    /** units per coin */
+    public static final long COIN = 100_000_000L;
+
+    private Amounts() {
+    }
+
+    /**
+     * @return {@code a + b}
+     * @throws ArithmeticException if the sum overflows
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /** @return {@code a + b}, or the {@code long} bound it overflowed past */
+    public static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        // overflow iff both operands have the sign the sum lacks
+        if (((a ^ sum) & (b ^ sum)) < 0)
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        return sum;
+    }
+
+    /**
+     * Compares the fee rates {@code feeA / sizeA} and {@code feeB / sizeB} (sizes positive) by
+     * cross-multiplying in 128 bits, so that no product overflows
+     *
+     * @return a negative number, zero or a positive number as the first rate is lower, equal or
+     *         higher
+     */
+    public static int compareRates(long feeA, long sizeA, long feeB, long sizeB) {
+        long highA = Math.multiplyHigh(feeA, sizeB);
+        long highB = Math.multiplyHigh(feeB, sizeA);
+        if (highA != highB)
+            return Long.compare(highA, highB);
+        return Long.compareUnsigned(feeA * sizeB, feeB * sizeA);
+    }
+}
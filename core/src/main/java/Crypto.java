@@ -0,0 +1,93 @@
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Crypto {
+
+    /**
+     * Provider lookups are costly, so every thread keeps its own engines. {@code Signature} and
+     * {@code MessageDigest} are not thread-safe, but an engine used by one thread only is.
+     */
+    private static final ThreadLocal<Signature> VERIFIER = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA256withRSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /** RSA verification time */
+    private static final Histogram VERIFY_TIME = Metrics.getDefault().histogram("crypto.verify");
+    /** keys the engine refused; the signature check fails */
+    private static final LongAdder INVALID_KEYS = Metrics.getDefault().counter("crypto.invalid_key");
+    /** signatures that could not even be decoded, e.g. of the wrong length; the check fails */
+    private static final LongAdder MALFORMED_SIGNATURES = Metrics.getDefault().counter("crypto.malformed_signature");
+
+    /**
+     * @return true is {@code signature} is a valid digital signature of {@code message} under the
+     *         key {@code pubKey}. Internally, this uses RSA signature, but the student does not
+     *         have to deal with any of the implementation details of the specific signature
+     *         algorithm
+     */
+    public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        long start = System.nanoTime();
+        Signature sig = VERIFIER.get();
+        try {
+            sig.initVerify(pubKey);
+        } catch (InvalidKeyException e) {
+            INVALID_KEYS.increment();
+            return false;
+        }
+        try {
+            sig.update(message);
+            return sig.verify(signature);
+        } catch (SignatureException e) {
+            MALFORMED_SIGNATURES.increment();
+        } finally {
+            VERIFY_TIME.recordSince(start);
+        }
+        return false;
+
+    }
+
+    /**
+     * Verifies the triples ({@code pubKeys[i]}, {@code messages[i]}, {@code signatures[i]}) on the
+     * calling thread, reusing one engine for all of them.
+     *
+     * @return whether each signature is valid
+     */
+    public static boolean[] verifySignatures(PublicKey[] pubKeys, byte[][] messages, byte[][] signatures) {
+        boolean[] valid = new boolean[pubKeys.length];
+        verifySignatures(pubKeys, messages, signatures, valid, 0, pubKeys.length);
+        return valid;
+    }
+
+    /** Verifies the triples with indices in [from, to) and stores the results in {@code valid} */
+    public static void verifySignatures(PublicKey[] pubKeys, byte[][] messages, byte[][] signatures,
+            boolean[] valid, int from, int to) {
+        for (int i = from; i < to; i++)
+            valid[i] = verifySignature(pubKeys[i], messages[i], signatures[i]);
+    }
+
+    /**
+     * @return this thread's SHA-256 engine, reset. The digest must be completed before anything
+     *         else on the same thread asks for it.
+     */
+    public static MessageDigest sha256() {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return md;
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, usually latencies in nanoseconds, that threads record into
+ * without locking. As in HdrHistogram the buckets are log-linear: every power of two is split into
+ * {@code 1 << SUB_BITS} buckets of equal width, so any value is known to within about 3% at a fixed
+ * size of about 15 KB, whatever the range of the values recorded. Recording is an increment of one
+ * bucket, a counter and the running maximum.
+ *
+ * <p>
+ * Readers see the counts as they are while values are still being recorded, so the statistics of
+ * one read may disagree slightly with each other.
+ */
+public final class Histogram {
+
+    /** every power of two is split into 2^SUB_BITS buckets */
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** Records {@code value}; negative values are recorded as 0 */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the nanoseconds elapsed since {@code start}, a value of {@code System.nanoTime()}
+     *
+     * @return the current {@code System.nanoTime()}, to time the next stage from
+     */
+    public long recordSince(long start) {
+        long now = System.nanoTime();
+        record(now - start);
+        return now;
+    }
+
+    /** @return the number of values recorded */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** @return the sum of the values recorded */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /** @return the largest value recorded, or 0 if there is none */
+    public long getMax() {
+        return max.get();
+    }
+
+    /** @return the mean of the values recorded, or 0 if there is none */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * @return the value below or at which {@code percentile} percent of the recorded values fall, to
+     *         within the width of its bucket, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += buckets.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(highestValueIn(i), getMax());
+        }
+        return getMax();
+    }
+
+    /** @return the bucket {@code value} is counted in */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** @return the smallest value counted in {@code bucket} */
+    static long lowestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /** @return the largest value counted in {@code bucket} */
+    static long highestValueIn(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueIn(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,526 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * UTXO set kept in a memory-mapped file instead of on the heap. The index file is an open
+ * addressing hash table of fixed 64 byte slots (state, index, 32 byte transaction hash, value and
+ * the offset of the recipient's key) probed linearly; the recipients' encoded keys are appended
+ * once each to a second file, {@code <index file>.keys}. Opening an existing store maps the files
+ * as they are, only the (much smaller) key file is read.
+ *
+ * <p>
+ * The store is the backend of {@code UTXOPool}s created with {@link UTXOPool#UTXOPool(File)}. Such
+ * a pool keeps its changes in a heap overlay until {@link #checkpoint} writes them to the file. The
+ * file then moves to a new generation; pools copied at an older generation keep seeing their own
+ * state through the values the checkpoint overwrote, which are kept for as long as such a pool is
+ * reachable.
+ *
+ * <p>
+ * A checkpoint first writes the changes it is about to make to {@code <index file>.journal}. If the
+ * process stops before the checkpoint completes, the next {@link #open} replays the journal and
+ * finishes it; writing a change twice has the same effect as writing it once.
+ */
+final class MappedUTXOStore {
+
+    /** value in an overlay or undo trie marking a UTXO as absent */
+    static final Transaction.Output TOMBSTONE = new Transaction().new Output(0, null);
+
+    private static final int MAGIC = 0x5554584f;
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int SEGMENT_BITS = 24;
+    private static final int MIN_CAPACITY = 1 << 10;
+    /** journal entry size: transaction hash, index, present flag, value, key offset */
+    private static final int JOURNAL_ENTRY_SIZE = UTXO.HASH_LENGTH + 4 + 1 + 8 + 8;
+
+    // header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_FORMAT = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_SIZE = 16;
+    private static final int H_DELETED = 24;
+    private static final int H_CLEAN = 32;
+
+    // slot fields
+    private static final int S_STATE = 0;
+    private static final int S_HASH = 4;
+    private static final int S_INDEX = 8;
+    private static final int S_TX_HASH = 12;
+    private static final int S_VALUE = 44;
+    private static final int S_KEY = 52;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    /** the state of the file between two checkpoints */
+    static final class Generation {
+        /**
+         * the values this generation had for the UTXOs the next checkpoint changed, TOMBSTONE for
+         * the ones it did not have
+         */
+        private UTXOTrie undo = UTXOTrie.EMPTY;
+        private Generation next;
+        /** the number of UTXOs in the file at this generation */
+        private final long size;
+
+        private Generation(long size) {
+            this.size = size;
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
+    /** owner of the outputs read back from the file */
+    private static final Transaction OUTPUT_OWNER = new Transaction();
+
+    private final File indexFile;
+    private final File journalFile;
+    private final RandomAccessFile keyFile;
+    private final HashMap<AddressRegistry.Address, Long> keyOffsets = new HashMap<AddressRegistry.Address, Long>();
+    private final HashMap<Long, PublicKey> keysByOffset = new HashMap<Long, PublicKey>();
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private int capacity;
+    private long size;
+    private long deleted;
+    private Generation current;
+
+    private MappedUTXOStore(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        this.journalFile = new File(indexFile.getPath() + ".journal");
+        this.keyFile = new RandomAccessFile(new File(indexFile.getPath() + ".keys"), "rw");
+        loadKeys();
+        if (!indexFile.exists() || indexFile.length() == 0) {
+            map(indexFile, MIN_CAPACITY, true);
+        } else if (!map(indexFile, -1, false)) {
+            recover();
+        }
+        Files.deleteIfExists(journalFile.toPath());
+        Files.deleteIfExists(new File(indexFile.getPath() + ".tmp").toPath());
+        current = new Generation(size);
+    }
+
+    /**
+     * Maps the store in {@code indexFile}, creating an empty one if the file does not exist, and
+     * finishes a checkpoint that was interrupted
+     *
+     * @throws IOException if the files cannot be mapped or are not a store
+     */
+    static MappedUTXOStore open(File indexFile) throws IOException {
+        return new MappedUTXOStore(indexFile);
+    }
+
+    /** @return the current generation of the file, for a pool that reads it as it is now */
+    Generation current() {
+        return current;
+    }
+
+    /** @return the output of UTXO ({@code txHash}, {@code index}) as of {@code generation} */
+    Transaction.Output get(Generation generation, byte[] txHash, int index) {
+        for (Generation g = generation; g != current; g = g.next) {
+            Transaction.Output out = g.undo.get(txHash, index);
+            if (out != null)
+                return out == TOMBSTONE ? null : out;
+        }
+        return read(txHash, index);
+    }
+
+    /** @return the output of {@code utxo} as of {@code generation} */
+    Transaction.Output get(Generation generation, UTXO utxo) {
+        for (Generation g = generation; g != current; g = g.next) {
+            Transaction.Output out = g.undo.get(utxo);
+            if (out != null)
+                return out == TOMBSTONE ? null : out;
+        }
+        return read(utxo);
+    }
+
+    /** @return every UTXO in the store as of {@code generation} */
+    ArrayList<UTXO> keys(Generation generation) {
+        HashSet<UTXO> all = new HashSet<UTXO>();
+        for (int slot = 0; slot < capacity; slot++) {
+            MappedByteBuffer seg = segment(slot);
+            int pos = position(slot);
+            if (seg.get(pos + S_STATE) == USED)
+                all.add(new UTXO(seg.getLong(pos + S_TX_HASH), seg.getLong(pos + S_TX_HASH + 8),
+                        seg.getLong(pos + S_TX_HASH + 16), seg.getLong(pos + S_TX_HASH + 24), seg.getInt(pos + S_INDEX)));
+        }
+        ArrayList<Generation> newer = new ArrayList<Generation>();
+        for (Generation g = generation; g != current; g = g.next)
+            newer.add(g);
+        for (int i = newer.size() - 1; i >= 0; i--) {
+            UTXOTrie undo = newer.get(i).undo;
+            ArrayList<UTXO> changed = new ArrayList<UTXO>();
+            undo.collectKeys(changed);
+            for (UTXO utxo : changed) {
+                if (undo.get(utxo) == TOMBSTONE)
+                    all.remove(utxo);
+                else
+                    all.add(utxo);
+            }
+        }
+        return new ArrayList<UTXO>(all);
+    }
+
+    /**
+     * Writes {@code overlay}, the changes a pool made on top of {@code generation}, to the file and
+     * starts a new generation, which is returned. The files are forced to disk before this returns.
+     *
+     * @throws IllegalStateException if {@code generation} is not the current one
+     */
+    Generation checkpoint(Generation generation, UTXOTrie overlay) throws IOException {
+        if (generation != current)
+            throw new IllegalStateException("another pool checkpointed this store after the pool was copied");
+        ArrayList<UTXO> changed = new ArrayList<UTXO>(overlay.size());
+        overlay.collectKeys(changed);
+        if (changed.isEmpty())
+            return current;
+
+        UTXOTrie undo = UTXOTrie.EMPTY;
+        for (UTXO utxo : changed) {
+            Transaction.Output old = read(utxo);
+            undo = undo.put(utxo, old == null ? TOMBSTONE : old);
+        }
+
+        beginCheckpoint(changed, overlay);
+        for (UTXO utxo : changed) {
+            Transaction.Output out = overlay.get(utxo);
+            if (out == TOMBSTONE)
+                delete(utxo);
+            else
+                write(utxo, out.value, keyOffset(out));
+        }
+        finishCheckpoint();
+
+        Generation next = new Generation(size);
+        current.undo = undo;
+        current.next = next;
+        current = next;
+        return next;
+    }
+
+    /**
+     * Writes the changes {@code overlay} makes to the UTXOs {@code changed} to the journal and marks
+     * the file as being in the middle of a checkpoint. Until {@link #finishCheckpoint} runs, a
+     * reopened store replays the journal.
+     */
+    void beginCheckpoint(ArrayList<UTXO> changed, UTXOTrie overlay) throws IOException {
+        FileOutputStream file = new FileOutputStream(journalFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(changed.size());
+            for (UTXO utxo : changed) {
+                Transaction.Output txOut = overlay.get(utxo);
+                if (!utxo.isPacked())
+                    throw new IllegalArgumentException("only " + UTXO.HASH_LENGTH + " byte transaction hashes can be stored");
+                for (int i = 0; i < 4; i++)
+                    out.writeLong(utxo.getTxHashWord(i));
+                out.writeInt(utxo.getIndex());
+                out.writeBoolean(txOut != TOMBSTONE);
+                out.writeLong(txOut == TOMBSTONE ? 0 : txOut.value);
+                out.writeLong(txOut == TOMBSTONE ? 0 : keyOffset(txOut));
+            }
+            out.writeInt(MAGIC);
+            keyFile.getChannel().force(true);
+            out.flush();
+            file.getChannel().force(true);
+        }
+        header.putInt(H_CLEAN, 0);
+        header.force();
+    }
+
+    /** Forces the table to disk, marks the file clean and drops the journal */
+    private void finishCheckpoint() throws IOException {
+        for (MappedByteBuffer seg : segments)
+            seg.force();
+        header.putLong(H_SIZE, size);
+        header.putLong(H_DELETED, deleted);
+        header.putInt(H_CLEAN, 1);
+        header.force();
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    /**
+     * Replays the journal of the checkpoint the file was left in the middle of. The counts in the
+     * header may be stale, so they are taken from the slots first.
+     */
+    private void recover() throws IOException {
+        if (journalFile.length() < 8)
+            throw new IOException(indexFile + " was left in the middle of a checkpoint without a journal");
+        size = 0;
+        deleted = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            byte state = segment(slot).get(position(slot) + S_STATE);
+            if (state == USED)
+                size++;
+            else if (state == DELETED)
+                deleted++;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            int count = in.readInt();
+            if (count < 0 || journalFile.length() != 8 + (long) count * JOURNAL_ENTRY_SIZE)
+                throw new IOException(journalFile + " is truncated");
+            for (int i = 0; i < count; i++) {
+                UTXO utxo = new UTXO(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt());
+                boolean present = in.readBoolean();
+                long value = in.readLong();
+                long keyOffset = in.readLong();
+                if (present)
+                    write(utxo, value, keyOffset);
+                else
+                    delete(utxo);
+            }
+            if (in.readInt() != MAGIC)
+                throw new IOException(journalFile + " is corrupt");
+        }
+        finishCheckpoint();
+    }
+
+    private Transaction.Output read(byte[] txHash, int index) {
+        if (txHash.length != UTXO.HASH_LENGTH)
+            return null;
+        return read(find(UTXO.getLong(txHash, 0), UTXO.getLong(txHash, 8), UTXO.getLong(txHash, 16),
+                UTXO.getLong(txHash, 24), index, UTXO.hash(txHash, index)));
+    }
+
+    private Transaction.Output read(UTXO utxo) {
+        if (!utxo.isPacked())
+            return null;
+        return read(find(utxo));
+    }
+
+    /** @return the output in {@code slot}, or null if the slot is not in use */
+    private Transaction.Output read(int slot) {
+        MappedByteBuffer seg = segment(slot);
+        int pos = position(slot);
+        if (seg.get(pos + S_STATE) != USED)
+            return null;
+        return OUTPUT_OWNER.new Output(seg.getLong(pos + S_VALUE), keysByOffset.get(seg.getLong(pos + S_KEY)));
+    }
+
+    private void write(UTXO utxo, long value, long keyOffset) throws IOException {
+        if ((size + deleted + 1) * 2 > capacity)
+            rehash(size * 4 > capacity ? capacity * 2 : capacity);
+        int hash = utxo.hashCode();
+        int slot = find(utxo);
+        MappedByteBuffer seg = segment(slot);
+        int pos = position(slot);
+        byte state = seg.get(pos + S_STATE);
+        if (state != USED) {
+            // find stops at the first empty slot, a deleted one before it can be reused
+            int free = firstFree(hash);
+            seg = segment(free);
+            pos = position(free);
+            if (seg.get(pos + S_STATE) == DELETED)
+                deleted--;
+            size++;
+            seg.putInt(pos + S_HASH, hash);
+            seg.putInt(pos + S_INDEX, utxo.getIndex());
+            for (int i = 0; i < 4; i++)
+                seg.putLong(pos + S_TX_HASH + i * 8, utxo.getTxHashWord(i));
+        }
+        seg.putLong(pos + S_VALUE, value);
+        seg.putLong(pos + S_KEY, keyOffset);
+        seg.put(pos + S_STATE, USED);
+    }
+
+    private void delete(UTXO utxo) {
+        if (!utxo.isPacked())
+            return;
+        int slot = find(utxo);
+        MappedByteBuffer seg = segment(slot);
+        int pos = position(slot);
+        if (seg.get(pos + S_STATE) != USED)
+            return;
+        seg.put(pos + S_STATE, DELETED);
+        size--;
+        deleted++;
+    }
+
+    private int find(UTXO utxo) {
+        return find(utxo.getTxHashWord(0), utxo.getTxHashWord(1), utxo.getTxHashWord(2), utxo.getTxHashWord(3),
+                utxo.getIndex(), utxo.hashCode());
+    }
+
+    /**
+     * @return the slot holding the UTXO whose transaction hash is {@code h0..h3}, or the empty slot
+     *         that ends its probe sequence
+     */
+    private int find(long h0, long h1, long h2, long h3, int index, int hash) {
+        int mask = capacity - 1;
+        for (int slot = (hash ^ (hash >>> 16)) & mask;; slot = (slot + 1) & mask) {
+            MappedByteBuffer seg = segment(slot);
+            int pos = position(slot);
+            byte state = seg.get(pos + S_STATE);
+            if (state == EMPTY)
+                return slot;
+            if (state == USED && seg.getInt(pos + S_HASH) == hash && seg.getInt(pos + S_INDEX) == index
+                    && seg.getLong(pos + S_TX_HASH) == h0 && seg.getLong(pos + S_TX_HASH + 8) == h1
+                    && seg.getLong(pos + S_TX_HASH + 16) == h2 && seg.getLong(pos + S_TX_HASH + 24) == h3)
+                return slot;
+        }
+    }
+
+    /** @return the first slot in the probe sequence of {@code hash} that is empty or deleted */
+    private int firstFree(int hash) {
+        int mask = capacity - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (segment(slot).get(position(slot) + S_STATE) == USED)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /** copies every live slot into a fresh table of {@code newCapacity} slots, dropping deleted ones */
+    private void rehash(int newCapacity) throws IOException {
+        MappedByteBuffer[] oldSegments = segments;
+        int oldCapacity = capacity;
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        map(tmp, newCapacity, true);
+        header.putInt(H_CLEAN, 0);
+        int mask = capacity - 1;
+        for (int old = 0; old < oldCapacity; old++) {
+            MappedByteBuffer from = oldSegments[old >>> SEGMENT_BITS];
+            int fromPos = (old & ((1 << SEGMENT_BITS) - 1)) * SLOT_SIZE;
+            if (from.get(fromPos + S_STATE) != USED)
+                continue;
+            int hash = from.getInt(fromPos + S_HASH);
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (segment(slot).get(position(slot) + S_STATE) != EMPTY)
+                slot = (slot + 1) & mask;
+            MappedByteBuffer to = segment(slot);
+            int toPos = position(slot);
+            for (int i = 0; i < SLOT_SIZE; i += 4)
+                to.putInt(toPos + i, from.getInt(fromPos + i));
+        }
+        deleted = 0;
+        for (MappedByteBuffer seg : segments)
+            seg.force();
+        header.putLong(H_SIZE, size);
+        header.putLong(H_DELETED, 0);
+        header.force();
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps {@code file}, formatting it as an empty table of {@code newCapacity} slots if
+     * {@code create} is set and checking its header otherwise
+     *
+     * @return false if the file was left in the middle of a checkpoint
+     */
+    private boolean map(File file, int newCapacity, boolean create) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            if (create) {
+                raf.setLength(HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            } else if (raf.length() < HEADER_SIZE) {
+                throw new IOException(file + " is not a UTXO store");
+            }
+            MappedByteBuffer newHeader = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (create) {
+                newHeader.putInt(H_MAGIC, MAGIC);
+                newHeader.putInt(H_FORMAT, FORMAT);
+                newHeader.putLong(H_CAPACITY, newCapacity);
+                newHeader.putLong(H_SIZE, 0);
+                newHeader.putLong(H_DELETED, 0);
+                newHeader.putInt(H_CLEAN, 1);
+            } else {
+                if (newHeader.getInt(H_MAGIC) != MAGIC || newHeader.getInt(H_FORMAT) != FORMAT)
+                    throw new IOException(file + " is not a UTXO store");
+                newCapacity = (int) newHeader.getLong(H_CAPACITY);
+                if (raf.length() < HEADER_SIZE + (long) newCapacity * SLOT_SIZE)
+                    throw new IOException(file + " is truncated");
+                size = newHeader.getLong(H_SIZE);
+                deleted = newHeader.getLong(H_DELETED);
+            }
+
+            int segmentSlots = 1 << SEGMENT_BITS;
+            MappedByteBuffer[] newSegments = new MappedByteBuffer[(newCapacity + segmentSlots - 1) / segmentSlots];
+            for (int i = 0; i < newSegments.length; i++) {
+                int slots = Math.min(segmentSlots, newCapacity - i * segmentSlots);
+                long offset = HEADER_SIZE + (long) i * segmentSlots * SLOT_SIZE;
+                newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) slots * SLOT_SIZE);
+            }
+            header = newHeader;
+            segments = newSegments;
+            capacity = newCapacity;
+            return newHeader.getInt(H_CLEAN) == 1;
+        }
+    }
+
+    private MappedByteBuffer segment(int slot) {
+        return segments[slot >>> SEGMENT_BITS];
+    }
+
+    private static int position(int slot) {
+        return (slot & ((1 << SEGMENT_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    /** @return the offset of {@code key} in the key file, appending it the first time */
+    private long keyOffset(Transaction.Output out) throws IOException {
+        AddressRegistry.Address address = out.getAddress();
+        Long offset = keyOffsets.get(address);
+        if (offset != null)
+            return offset;
+        PublicKey key = address.getKey();
+        long end = keyFile.length();
+        keyFile.seek(end);
+        keyFile.writeUTF(key.getAlgorithm());
+        byte[] bytes = key.getEncoded();
+        keyFile.writeInt(bytes.length);
+        keyFile.write(bytes);
+        keyOffsets.put(address, end);
+        keysByOffset.put(end, key);
+        return end;
+    }
+
+    private void loadKeys() throws IOException {
+        long length = keyFile.length();
+        keyFile.seek(0);
+        while (keyFile.getFilePointer() < length) {
+            long offset = keyFile.getFilePointer();
+            String algorithm;
+            byte[] bytes;
+            try {
+                algorithm = keyFile.readUTF();
+                bytes = new byte[keyFile.readInt()];
+                keyFile.readFully(bytes);
+            } catch (EOFException e) {
+                // a key appended by an interrupted checkpoint, nothing in the index refers to it
+                keyFile.setLength(offset);
+                return;
+            }
+            try {
+                PublicKey decoded = KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(bytes));
+                AddressRegistry.Address address = AddressRegistry.getDefault().intern(decoded);
+                keysByOffset.put(offset, address.getKey());
+                keyOffsets.put(address, offset);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("cannot decode key at offset " + offset, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A registry of named counters, gauges and {@link Histogram}s. Components look up what they update
+ * once, when they are created, so the hot paths only touch the metric itself: counters are
+ * {@code LongAdder}s, which threads increment without contending on one cache line, gauges are
+ * {@code AtomicLong}s set to the latest value, and histograms are lock-free as well. Looking a name
+ * up again returns the same metric, so components sharing a registry add up.
+ *
+ * <p>
+ * The registry is read through {@link #visit(Visitor)}, which any exporter can build on, or over
+ * JMX once {@link #registerMBean(String)} has been called.
+ *
+ * <p>
+ * Names are dot-separated and lower case, starting with the component: {@code block.*} for
+ * {@code BlockChain.addBlock}, {@code chain.*}, {@code mempool.*} and {@code store.*} for the state
+ * of a block chain, {@code tx.*} for {@code TxHandler} and transaction batches, {@code crypto.*} for
+ * {@code Crypto}.
+ */
+public final class Metrics {
+
+    /** What {@link #visit(Visitor)} reports every metric to, in name order within each kind */
+    public interface Visitor {
+        void counter(String name, long value);
+
+        void gauge(String name, long value);
+
+        void histogram(String name, Histogram histogram);
+    }
+
+    private static final Metrics DEFAULT = new Metrics();
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    /** @return the registry shared by every component that is not given one */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /** @return the counter called {@code name}, created at 0 if there is none yet */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /** @return the gauge called {@code name}, created at 0 if there is none yet */
+    public AtomicLong gauge(String name) {
+        return gauges.computeIfAbsent(name, n -> new AtomicLong());
+    }
+
+    /** @return the histogram called {@code name}, created empty if there is none yet */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /** @return the current value of the counter called {@code name}, 0 if there is none */
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /** Reports every counter, then every gauge, then every histogram to {@code visitor} */
+    public void visit(Visitor visitor) {
+        for (Map.Entry<String, LongAdder> e : new TreeMap<String, LongAdder>(counters).entrySet())
+            visitor.counter(e.getKey(), e.getValue().sum());
+        for (Map.Entry<String, AtomicLong> e : new TreeMap<String, AtomicLong>(gauges).entrySet())
+            visitor.gauge(e.getKey(), e.getValue().get());
+        for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(histograms).entrySet())
+            visitor.histogram(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Registers this registry with the platform MBean server under {@code objectName}, for example
+     * {@code "blockchain:type=Metrics"}. Every counter and gauge is an attribute of its own name;
+     * every histogram {@code h} is reported as {@code h.count}, {@code h.mean}, {@code h.p50},
+     * {@code h.p99}, {@code h.p999} and {@code h.max}. Metrics created later show up as well.
+     *
+     * @return the name the registry was registered under
+     * @throws IllegalArgumentException if {@code objectName} is malformed or already registered
+     */
+    public ObjectName registerMBean(String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
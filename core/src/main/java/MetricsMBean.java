@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only view of a {@link Metrics} registry over JMX. The attributes are read from the registry
+ * on every request, so the MBean needs no updating as metrics are created.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** @return every attribute and its current value, counters and gauges first */
+    private Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        metrics.visit(new Metrics.Visitor() {
+            @Override
+            public void counter(String name, long value) {
+                values.put(name, value);
+            }
+
+            @Override
+            public void gauge(String name, long value) {
+                values.put(name, value);
+            }
+
+            @Override
+            public void histogram(String name, Histogram h) {
+                values.put(name + ".count", h.getCount());
+                values.put(name + ".mean", h.getMean());
+                values.put(name + ".p50", h.getValueAtPercentile(50));
+                values.put(name + ".p99", h.getValueAtPercentile(99));
+                values.put(name + ".p999", h.getValueAtPercentile(99.9));
+                values.put(name + ".max", h.getMax());
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = values().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = values();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Object value = values.get(attribute);
+            if (value != null)
+                list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (Map.Entry<String, Object> e : values().entrySet())
+            attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true,
+                    false, false));
+        return new MBeanInfo(getClass().getName(), "block chain metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,200 @@
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of signature checks that succeeded. An entry is keyed by the SHA-256
+ * digest of the data the signature signs, the output it spends and the signature, so a transaction
+ * that is validated again (when it enters the pool, in {@code BlockHandler.createBlock} and in
+ * {@code BlockChain.addBlock}) costs a hash and a lookup instead of an RSA verification. Failures
+ * are not cached. The key is computed from the transaction's content rather than from the hash it
+ * claims, so a hit only ever vouches for the exact input and outputs that were verified. Unsigned
+ * inputs bypass the cache.
+ *
+ * <p>
+ * Entries are spread over independently locked segments, each evicting its least recently used
+ * entry when full. Lookups probe with a key each thread reuses, so a hit allocates nothing.
+ */
+public class SignatureCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int SEGMENTS = 16;
+
+    private static final SignatureCache DEFAULT = new SignatureCache(DEFAULT_CAPACITY);
+
+    /** the key each thread looks entries up with; it shares the signature of the transaction */
+    private static final ThreadLocal<Key> PROBE = ThreadLocal.withInitial(Key::new);
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** Creates a cache holding up to about {@code capacity} verified signatures */
+    public SignatureCache(int capacity) {
+        segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(perSegment);
+    }
+
+    /** @return the cache shared by all {@code TxHandler}s that are not given one */
+    public static SignatureCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return true if the signature on input {@code index} of {@code tx} is valid for
+     *         {@code spent}, the output it claims. Only runs RSA verification on a cache miss.
+     */
+    public boolean verify(Transaction tx, int index, Transaction.Output spent) {
+        if (isVerified(tx, index, spent))
+            return true;
+        boolean valid = Crypto.verifySignature(spent.address, tx.rawDataToSign(index),
+                tx.getInput(index).signature);
+        if (valid)
+            markVerified(tx, index, spent);
+        return valid;
+    }
+
+    /** @return true if a successful check of input {@code index} of {@code tx} is cached */
+    public boolean isVerified(Transaction tx, int index, Transaction.Output spent) {
+        Key probe = PROBE.get();
+        boolean found = probe.set(tx, index, spent) && segmentFor(probe).contains(probe);
+        // the probe must not keep the transaction's arrays alive
+        probe.clear();
+        if (found) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /** Records that the signature on input {@code index} of {@code tx} is valid */
+    public void markVerified(Transaction tx, int index, Transaction.Output spent) {
+        Key key = new Key();
+        if (key.set(tx, index, spent)) {
+            key.copyArrays();
+            segmentFor(key).add(key);
+        }
+    }
+
+    /** @return the number of lookups answered from the cache */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that had to verify the signature */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return the number of cached signatures */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /** Drops every cached signature; the counters are kept */
+    public void clear() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * The digest of the signed data, the output spent and the signature. A stored key owns copies
+     * of its arrays and never changes again; a probe reuses its digest array, points at the
+     * signature of the transaction being looked up and is never stored.
+     */
+    private static final class Key {
+        private final byte[] digest = new byte[32];
+        private Transaction.Output spent;
+        private byte[] signature;
+        private int hash;
+
+        /**
+         * Points this key at input {@code index} of {@code tx}, digesting the data its signature
+         * signs
+         *
+         * @return false if the input is missing or unsigned, which bypasses the cache
+         */
+        boolean set(Transaction tx, int index, Transaction.Output spent) {
+            Transaction.Input in = tx.getInput(index);
+            if (index < 0 || in == null || in.signature == null)
+                return false;
+            MessageDigest md = Crypto.sha256();
+            md.update(tx.rawDataToSign(index));
+            try {
+                md.digest(digest, 0, digest.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            this.spent = spent;
+            this.signature = in.signature;
+            this.hash = Arrays.hashCode(digest);
+            return true;
+        }
+
+        void copyArrays() {
+            signature = signature.clone();
+        }
+
+        void clear() {
+            spent = null;
+            signature = null;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key k = (Key) other;
+            return hash == k.hash && Arrays.equals(digest, k.digest) && Arrays.equals(signature, k.signature)
+                    && spent.equals(k.spent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Key, Boolean> entries;
+
+        Segment(final int capacity) {
+            entries = new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized boolean contains(Key key) {
+            return entries.get(key) != null;
+        }
+
+        synchronized void add(Key key) {
+            entries.put(key, Boolean.TRUE);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+    }
+}
@@ -1,12 +1,18 @@
 
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.interfaces.RSAPublicKey;
 import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A transaction memoizes its raw encoding and the signing preimage of every input, so validating the
+ * same transaction again does no serialization work. The memo is dropped by {@code addInput},
+ * {@code addOutput}, {@code removeInput} and {@code addSignature} (on the transaction or on one of
+ * its inputs); code that writes the public fields of an input or output, or edits the lists returned
+ * by {@code getInputs} and {@code getOutputs}, must not expect the encodings to follow.
+ */
 public class Transaction {
 
     public class Input {
@@ -30,6 +36,7 @@ public class Transaction {
                 signature = null;
             else
                 signature = Arrays.copyOf(sig, sig.length);
+            rawTx = null;
         }
 
         public boolean equals(Object other) {
@@ -69,16 +76,37 @@ public class Transaction {
     }
 
     public class Output {
-        /** value in bitcoins of the output */
-        public double value;
+        /** value of the output, in units of {@code 1 / Amounts.COIN} coins */
+        public long value;
         /** the address or public key of the recipient */
         public PublicKey address;
-
-        public Output(double v, PublicKey addr) {
+        /** {@code address} interned, or null if it is null */
+        private AddressRegistry.Address interned;
+
+        /**
+         * Creates an output of value {@code v} to {@code addr}. The key is interned, and
+         * {@code address} is set to the instance the registry holds for it.
+         */
+        public Output(long v, PublicKey addr) {
             value = v;
+            if (addr != null) {
+                interned = AddressRegistry.getDefault().intern(addr);
+                addr = interned.getKey();
+            }
             address = addr;
         }
 
+        /** @return the interned address of the recipient, or null if {@code address} is null */
+        public AddressRegistry.Address getAddress() {
+            AddressRegistry.Address a = interned;
+            if (a == null ? address != null : a.getKey() != address) {
+                // the public field was assigned since
+                a = address == null ? null : AddressRegistry.getDefault().intern(address);
+                interned = a;
+            }
+            return a;
+        }
+
         public boolean equals(Object other) {
             if (other == null) {
                 return false;
@@ -91,20 +119,14 @@ public class Transaction {
 
             if (value != op.value)
                 return false;
-            if (!((RSAPublicKey) address).getPublicExponent().equals(
-                    ((RSAPublicKey) op.address).getPublicExponent()))
-                return false;
-            if (!((RSAPublicKey) address).getModulus().equals(
-                    ((RSAPublicKey) op.address).getModulus()))
-                return false;
-            return true;
+            // equal keys intern to the same address
+            return getAddress() == op.getAddress();
         }
 
         public int hashCode() {
             int hash = 1;
-            hash = hash * 17 + (int) value * 10000;
-            hash = hash * 31 + ((RSAPublicKey) address).getPublicExponent().hashCode();
-            hash = hash * 31 + ((RSAPublicKey) address).getModulus().hashCode();
+            hash = hash * 17 + Long.hashCode(value);
+            hash = hash * 31 + getAddress().hashCode();
             return hash;
         }
     }
@@ -115,6 +137,13 @@ public class Transaction {
     private ArrayList<Output> outputs;
     private boolean coinbase;
 
+    /** encoding of all outputs, the common tail of the raw tx and of every signing preimage */
+    private volatile byte[] outputsData;
+    /** signing preimage of each input, filled on first use */
+    private volatile AtomicReferenceArray<byte[]> sigData;
+    /** raw tx, which unlike the preimages also depends on the signatures */
+    private volatile byte[] rawTx;
+
     public Transaction() {
         inputs = new ArrayList<Input>();
         outputs = new ArrayList<Output>();
@@ -123,13 +152,19 @@ public class Transaction {
 
     public Transaction(Transaction tx) {
         hash = tx.hash.clone();
-        inputs = new ArrayList<Input>(tx.inputs);
+        // inputs are copied rather than shared, as signing one drops the memo of its own transaction
+        inputs = new ArrayList<Input>(tx.inputs.size());
+        for (Input in : tx.inputs) {
+            Input copy = new Input(in.prevTxHash, in.outputIndex);
+            copy.addSignature(in.signature);
+            inputs.add(copy);
+        }
         outputs = new ArrayList<Output>(tx.outputs);
         coinbase = false;
     }
 
     /** create a coinbase transaction of value {@code coin} and calls finalize on it */
-    public Transaction(double coin, PublicKey address) {
+    public Transaction(long coin, PublicKey address) {
         coinbase = true;
         inputs = new ArrayList<Input>();
         outputs = new ArrayList<Output>();
@@ -144,15 +179,18 @@ public class Transaction {
     public void addInput(byte[] prevTxHash, int outputIndex) {
         Input in = new Input(prevTxHash, outputIndex);
         inputs.add(in);
+        invalidate();
     }
 
-    public void addOutput(double value, PublicKey address) {
+    public void addOutput(long value, PublicKey address) {
         Output op = new Output(value, address);
         outputs.add(op);
+        invalidate();
     }
 
     public void removeInput(int index) {
         inputs.remove(index);
+        invalidate();
     }
 
     public void removeInput(UTXO ut) {
@@ -161,44 +199,55 @@ public class Transaction {
             UTXO u = new UTXO(in.prevTxHash, in.outputIndex);
             if (u.equals(ut)) {
                 inputs.remove(i);
+                invalidate();
                 return;
             }
         }
     }
 
+    /** Drops all memoized encodings */
+    private void invalidate() {
+        outputsData = null;
+        sigData = null;
+        rawTx = null;
+    }
+
     public byte[] getRawDataToSign(int index) {
         // ith input and all outputs
-        ArrayList<Byte> sigData = new ArrayList<Byte>();
         if (index > inputs.size())
             return null;
-        Input in = inputs.get(index);
-        byte[] prevTxHash = in.prevTxHash;
-        ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-        b.putInt(in.outputIndex);
-        byte[] outputIndex = b.array();
-        if (prevTxHash != null)
-            for (int i = 0; i < prevTxHash.length; i++)
-                sigData.add(prevTxHash[i]);
-        for (int i = 0; i < outputIndex.length; i++)
-            sigData.add(outputIndex[i]);
-        for (Output op : outputs) {
-            ByteBuffer bo = ByteBuffer.allocate(Double.SIZE / 8);
-            bo.putDouble(op.value);
-            byte[] value = bo.array();
-            byte[] addressExponent = ((RSAPublicKey) op.address).getPublicExponent().toByteArray();
-            byte[] addressModulus = ((RSAPublicKey) op.address).getModulus().toByteArray();
-            for (int i = 0; i < value.length; i++)
-                sigData.add(value[i]);
-            for (int i = 0; i < addressExponent.length; i++)
-                sigData.add(addressExponent[i]);
-            for (int i = 0; i < addressModulus.length; i++)
-                sigData.add(addressModulus[i]);
+        return rawDataToSign(index).clone();
+    }
+
+    /** @return the memoized signing preimage of input {@code index}; callers must not modify it */
+    byte[] rawDataToSign(int index) {
+        AtomicReferenceArray<byte[]> preimages = sigData;
+        if (preimages == null) {
+            preimages = new AtomicReferenceArray<byte[]>(inputs.size());
+            sigData = preimages;
         }
-        byte[] sigD = new byte[sigData.size()];
-        int i = 0;
-        for (Byte sb : sigData)
-            sigD[i++] = sb;
-        return sigD;
+        byte[] data = preimages.get(index);
+        if (data == null) {
+            Input in = inputs.get(index);
+            byte[] outs = outputsData();
+            ByteBuffer b = ByteBuffer.allocate(TxSerializer.inputSize(in, false) + outs.length);
+            TxSerializer.writeInput(in, false, b);
+            b.put(outs);
+            data = b.array();
+            preimages.set(index, data);
+        }
+        return data;
+    }
+
+    private byte[] outputsData() {
+        byte[] data = outputsData;
+        if (data == null) {
+            ByteBuffer b = ByteBuffer.allocate(TxSerializer.outputsSize(this));
+            TxSerializer.writeOutputs(this, b);
+            data = b.array();
+            outputsData = data;
+        }
+        return data;
     }
 
     public void addSignature(byte[] signature, int index) {
@@ -206,50 +255,32 @@ public class Transaction {
     }
 
     public byte[] getRawTx() {
-        ArrayList<Byte> rawTx = new ArrayList<Byte>();
-        for (Input in : inputs) {
-            byte[] prevTxHash = in.prevTxHash;
-            ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-            b.putInt(in.outputIndex);
-            byte[] outputIndex = b.array();
-            byte[] signature = in.signature;
-            if (prevTxHash != null)
-                for (int i = 0; i < prevTxHash.length; i++)
-                    rawTx.add(prevTxHash[i]);
-            for (int i = 0; i < outputIndex.length; i++)
-                rawTx.add(outputIndex[i]);
-            if (signature != null)
-                for (int i = 0; i < signature.length; i++)
-                    rawTx.add(signature[i]);
-        }
-        for (Output op : outputs) {
-            ByteBuffer b = ByteBuffer.allocate(Double.SIZE / 8);
-            b.putDouble(op.value);
-            byte[] value = b.array();
-            byte[] addressExponent = ((RSAPublicKey) op.address).getPublicExponent().toByteArray();
-            byte[] addressModulus = ((RSAPublicKey) op.address).getModulus().toByteArray();
-            for (int i = 0; i < value.length; i++)
-                rawTx.add(value[i]);
-            for (int i = 0; i < addressExponent.length; i++)
-                rawTx.add(addressExponent[i]);
-            for (int i = 0; i < addressModulus.length; i++)
-                rawTx.add(addressModulus[i]);
+        return rawTx().clone();
+    }
+
+    /** @return the memoized raw tx; callers must not modify it */
+    byte[] rawTx() {
+        byte[] data = rawTx;
+        if (data == null) {
+            byte[] outs = outputsData();
+            int size = outs.length;
+            for (Input in : inputs)
+                size += TxSerializer.inputSize(in, true);
+            ByteBuffer b = ByteBuffer.allocate(size);
+            for (Input in : inputs)
+                TxSerializer.writeInput(in, true, b);
+            b.put(outs);
+            data = b.array();
+            rawTx = data;
         }
-        byte[] tx = new byte[rawTx.size()];
-        int i = 0;
-        for (Byte b : rawTx)
-            tx[i++] = b;
-        return tx;
+        return data;
     }
 
+    /** Hashes the raw tx, streaming it into the digest rather than building the array */
     public void finalize() {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(getRawTx());
-            hash = md.digest();
-        } catch (NoSuchAlgorithmException x) {
-            x.printStackTrace(System.err);
-        }
+        MessageDigest md = Crypto.sha256();
+        TxSerializer.digestRawTx(this, md);
+        hash = md.digest();
     }
 
     public void setHash(byte[] h) {
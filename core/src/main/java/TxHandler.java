@@ -0,0 +1,443 @@
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TxHandler {
+	/**
+	 * Below this many signatures {@code handleTxs} verifies serially even when a
+	 * verifier pool is set, as forking would cost more than it saves.
+	 */
+	public static final int PARALLEL_THRESHOLD = 16;
+
+	/** time taken by {@code handleTxs} per call */
+	private static final Histogram HANDLE_TIME = Metrics.getDefault().histogram("tx.handle");
+	private static final LongAdder ACCEPTED = Metrics.getDefault().counter("tx.accepted");
+	private static final LongAdder REJECTED = Metrics.getDefault().counter("tx.rejected");
+	/** {@code tx.rejected.<result>}: rejections by {@code ValidationResult}, by ordinal */
+	private static final LongAdder[] REASONS = new LongAdder[ValidationResult.values().length];
+
+	static {
+		for (ValidationResult r : ValidationResult.values()) {
+			REASONS[r.ordinal()] = Metrics.getDefault().counter("tx.rejected." + r.name().toLowerCase());
+		}
+	}
+
+	private UTXOPool utxoPool;
+	private final ForkJoinPool verifier;
+	private final SignatureCache sigCache;
+
+	/**
+	 * Creates a public ledger whose current UTXOPool (collection of unspent
+	 * transaction outputs) is {@code utxoPool}. This should make a copy of utxoPool
+	 * by using the UTXOPool(UTXOPool uPool) constructor.
+	 */
+	public TxHandler(UTXOPool utxoPool) {
+		this(utxoPool, null);
+	}
+
+	/**
+	 * Creates a public ledger like {@link #TxHandler(UTXOPool)} whose
+	 * {@code handleTxs} verifies signatures on {@code verifier}. A null
+	 * {@code verifier} selects the serial path.
+	 */
+	public TxHandler(UTXOPool utxoPool, ForkJoinPool verifier) {
+		this(utxoPool, verifier, SignatureCache.getDefault());
+	}
+
+	/**
+	 * Creates a public ledger like {@link #TxHandler(UTXOPool, ForkJoinPool)} that
+	 * looks signatures up in {@code sigCache} before verifying them. A null
+	 * {@code sigCache} verifies every signature.
+	 */
+	public TxHandler(UTXOPool utxoPool, ForkJoinPool verifier, SignatureCache sigCache) {
+		this.utxoPool = new UTXOPool(utxoPool);
+		this.verifier = verifier;
+		this.sigCache = sigCache;
+	}
+
+	/**
+	 * Get the UTXO pool.
+	 */
+	public UTXOPool getUtxoPool() {
+		return utxoPool;
+	}
+
+	/**
+	 * @return true if: (1) all outputs claimed by {@code tx} are in the current
+	 *         UTXO pool, (2) the signatures on each input of {@code tx} are valid,
+	 *         (3) no UTXO is claimed multiple times by {@code tx}, (4) all of
+	 *         {@code tx}s output values are non-negative, and (5) the sum of
+	 *         {@code tx}s input values is greater than or equal to the sum of its
+	 *         output values; and false otherwise. //Should the input value and
+	 *         output value be equal? Otherwise the ledger will become unbalanced.
+	 */
+	public boolean isValidTx(Transaction tx) {
+		return validate(tx).isValid();
+	}
+
+	/**
+	 * Runs the checks of {@link #isValidTx(Transaction)}, cheapest first, and stops
+	 * at the first that fails. Allocates nothing when {@code tx} is valid and its
+	 * signatures are cached; verifying a signature and caching it do allocate.
+	 *
+	 * @return {@code VALID}, or why {@code tx} is not valid
+	 */
+	public ValidationResult validate(Transaction tx) {
+		ValidationResult result = validate(tx, utxoPool, true);
+		if (!result.isValid()) {
+			REASONS[result.ordinal()].increment();
+		}
+		return result;
+	}
+
+	/**
+	 * Checks {@code tx} against {@code pool}; the signature check (2) is skipped
+	 * unless {@code checkSignatures} is set.
+	 */
+	private ValidationResult validate(Transaction tx, UTXOPool pool, boolean checkSignatures) {
+		ValidationResult result = checkStructure(tx);
+		if (result != ValidationResult.VALID) {
+			return result;
+		}
+
+		long inputSum = 0;
+		for (int i = 0; i < tx.numInputs(); i++) {
+			Transaction.Input input = tx.getInput(i);
+			Transaction.Output correspondingOutput = pool.getTxOutput(input.prevTxHash, input.outputIndex);
+			if (correspondingOutput == null) {
+				return ValidationResult.MISSING_INPUT;
+			}
+			inputSum = Amounts.saturatedAdd(inputSum, correspondingOutput.value);
+		}
+
+		// Should the input value and output value be equal? Otherwise the ledger will
+		// become unbalanced.
+		// The difference between inputSum and outputSum is the transaction fee
+		if (outputSum(tx) > inputSum) {
+			return ValidationResult.INSUFFICIENT_INPUT;
+		}
+
+		for (int i = 0; checkSignatures && i < tx.numInputs(); i++) {
+			if (!verifySignatureOfConsumeCoin(pool, tx, i, tx.getInput(i))) {
+				return ValidationResult.BAD_SIGNATURE;
+			}
+		}
+		return ValidationResult.VALID;
+	}
+
+	/**
+	 * Runs the checks that need nothing but {@code tx} itself: every input names a
+	 * previous transaction and is signed, every output value is positive, the
+	 * output values add up without overflowing and no output is claimed twice.
+	 *
+	 * @return {@code VALID}, or why {@code tx} is not valid
+	 */
+	static ValidationResult checkStructure(Transaction tx) {
+		for (int i = 0; i < tx.numInputs(); i++) {
+			Transaction.Input input = tx.getInput(i);
+			if (input.prevTxHash == null) {
+				return ValidationResult.MALFORMED;
+			}
+			if (input.signature == null) {
+				return ValidationResult.BAD_SIGNATURE;
+			}
+		}
+
+		long outputSum = 0;
+		for (int i = 0; i < tx.numOutputs(); i++) {
+			Transaction.Output output = tx.getOutput(i);
+			if (output.value <= 0) {
+				return ValidationResult.NEGATIVE_OUTPUT;
+			}
+
+			try {
+				outputSum = Amounts.add(outputSum, output.value);
+			} catch (ArithmeticException e) {
+				// no set of inputs can cover it
+				return ValidationResult.INSUFFICIENT_INPUT;
+			}
+		}
+
+		if (isCoinConsumedMultipleTimes(tx)) {
+			return ValidationResult.DOUBLE_CLAIM;
+		}
+		return ValidationResult.VALID;
+	}
+
+	/**
+	 * @return the sum of the output values of {@code tx}, which must have passed
+	 *         {@link #checkStructure(Transaction)}
+	 */
+	static long outputSum(Transaction tx) {
+		long outputSum = 0;
+		for (int i = 0; i < tx.numOutputs(); i++) {
+			outputSum += tx.getOutput(i).value;
+		}
+		return outputSum;
+	}
+
+	/**
+	 * Up to this many inputs are compared pairwise for claims of the same output;
+	 * larger transactions go through a set kept per thread. Neither allocates.
+	 */
+	private static final int PAIRWISE_INPUTS = 16;
+
+	private static final ThreadLocal<UTXOSet> CLAIMED = ThreadLocal.withInitial(() -> new UTXOSet(PAIRWISE_INPUTS * 4));
+
+	static boolean isCoinConsumedMultipleTimes(Transaction tx) {
+		int n = tx.numInputs();
+		if (n <= PAIRWISE_INPUTS) {
+			for (int i = 1; i < n; i++) {
+				Transaction.Input input = tx.getInput(i);
+				for (int j = 0; j < i; j++) {
+					Transaction.Input other = tx.getInput(j);
+					if (input.outputIndex == other.outputIndex && Arrays.equals(input.prevTxHash, other.prevTxHash)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		UTXOSet claimedUTXO = CLAIMED.get();
+		claimedUTXO.clear();
+		for (int i = 0; i < n; i++) {
+			Transaction.Input input = tx.getInput(i);
+			if (!claimedUTXO.add(input.prevTxHash, input.outputIndex)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean verifySignatureOfConsumeCoin(UTXOPool pool, Transaction tx, int index, Transaction.Input input) {
+		Transaction.Output correspondingOutput = pool.getTxOutput(input.prevTxHash, input.outputIndex);
+		if (sigCache != null) {
+			return sigCache.verify(tx, index, correspondingOutput);
+		}
+		PublicKey pk = correspondingOutput.address;
+		return Crypto.verifySignature(pk, tx.rawDataToSign(index), input.signature);
+	}
+
+	/**
+	 * Handles each epoch by receiving an unordered array of proposed transactions,
+	 * checking each transaction for correctness, returning a mutually valid array
+	 * of accepted transactions, and updating the current UTXO pool as appropriate.
+	 */
+	public Transaction[] handleTxs(Transaction[] possibleTxs) {
+		long start = System.nanoTime();
+		Transaction[] result;
+		if (verifier != null && countInputs(possibleTxs) >= PARALLEL_THRESHOLD) {
+			result = handleTxsParallel(possibleTxs);
+		} else {
+			result = handleTxsSerial(possibleTxs);
+		}
+		ACCEPTED.add(result.length);
+		REJECTED.add(possibleTxs.length - result.length);
+		HANDLE_TIME.recordSince(start);
+		return result;
+	}
+
+	/** The serial algorithm of {@code handleTxs} */
+	private Transaction[] handleTxsSerial(Transaction[] possibleTxs) {
+		List<Transaction> acceptedTx = new ArrayList<Transaction>();
+		for (int i = 0; i < possibleTxs.length; i++) {
+			Transaction tx = possibleTxs[i];
+			if (isValidTx(tx)) {
+				acceptedTx.add(tx);
+
+				removeConsumedCoinsFromPool(utxoPool, tx);
+				addCreatedCoinsToPool(utxoPool, tx);
+			}
+		}
+
+		Transaction[] result = new Transaction[acceptedTx.size()];
+		acceptedTx.toArray(result);
+		return result;
+	}
+
+	private static final byte SIG_UNKNOWN = 0;
+	private static final byte SIG_VALID = 1;
+	private static final byte SIG_INVALID = 2;
+
+	/**
+	 * Same result as the serial {@code handleTxs}, but signatures are verified in
+	 * bulk on {@code verifier}. Each round replays the serial algorithm with only
+	 * the structural and UTXO checks, treating transactions whose signatures have
+	 * not been verified yet as valid, then verifies those signatures in parallel.
+	 * The round in which no unverified transaction is accepted gives the answer;
+	 * usually this is the second one, and a further round is only needed when a
+	 * bad signature frees an output for a transaction that was rejected before.
+	 */
+	private Transaction[] handleTxsParallel(Transaction[] possibleTxs) {
+		byte[] sigState = new byte[possibleTxs.length];
+		Transaction.Output[][] spent = new Transaction.Output[possibleTxs.length][];
+		ValidationResult[] results = new ValidationResult[possibleTxs.length];
+		while (true) {
+			UTXOPool pool = new UTXOPool(utxoPool);
+			List<Transaction> acceptedTx = new ArrayList<Transaction>();
+			List<Integer> unverified = new ArrayList<Integer>();
+			for (int i = 0; i < possibleTxs.length; i++) {
+				Transaction tx = possibleTxs[i];
+				results[i] = sigState[i] == SIG_INVALID ? ValidationResult.BAD_SIGNATURE : validate(tx, pool, false);
+				if (!results[i].isValid()) {
+					continue;
+				}
+				if (sigState[i] == SIG_UNKNOWN) {
+					unverified.add(i);
+					spent[i] = lookupSpentOutputs(pool, tx);
+				}
+				acceptedTx.add(tx);
+				removeConsumedCoinsFromPool(pool, tx);
+				addCreatedCoinsToPool(pool, tx);
+			}
+
+			if (unverified.isEmpty()) {
+				for (ValidationResult result : results) {
+					if (!result.isValid()) {
+						REASONS[result.ordinal()].increment();
+					}
+				}
+				utxoPool = pool;
+				return acceptedTx.toArray(new Transaction[acceptedTx.size()]);
+			}
+			verifySignatures(possibleTxs, unverified, spent, sigState);
+		}
+	}
+
+	private static Transaction.Output[] lookupSpentOutputs(UTXOPool pool, Transaction tx) {
+		Transaction.Output[] outputs = new Transaction.Output[tx.numInputs()];
+		for (int j = 0; j < outputs.length; j++) {
+			Transaction.Input input = tx.getInput(j);
+			outputs[j] = pool.getTxOutput(input.prevTxHash, input.outputIndex);
+		}
+		return outputs;
+	}
+
+	/**
+	 * Verifies every input signature of the transactions at {@code indices} as one
+	 * flat batch of (key, message, signature) triples and records the outcome per
+	 * transaction in {@code sigState}. Signatures found in the cache are left out
+	 * of the batch.
+	 */
+	private void verifySignatures(Transaction[] txs, List<Integer> indices, Transaction.Output[][] spent,
+			byte[] sigState) {
+		int total = 0;
+		for (int i : indices) {
+			total += txs[i].numInputs();
+		}
+		boolean[] valid = new boolean[total];
+		int[] batch = new int[total];
+		int batchSize = 0;
+		int k = 0;
+		for (int i : indices) {
+			for (int j = 0; j < txs[i].numInputs(); j++, k++) {
+				if (sigCache != null && sigCache.isVerified(txs[i], j, spent[i][j])) {
+					valid[k] = true;
+				} else {
+					batch[batchSize++] = k;
+				}
+			}
+		}
+
+		PublicKey[] keys = new PublicKey[batchSize];
+		byte[][] messages = new byte[batchSize][];
+		byte[][] signatures = new byte[batchSize][];
+		int b = 0;
+		k = 0;
+		for (int i : indices) {
+			Transaction tx = txs[i];
+			for (int j = 0; j < tx.numInputs(); j++, k++) {
+				if (b < batchSize && batch[b] == k) {
+					keys[b] = spent[i][j].address;
+					messages[b] = tx.rawDataToSign(j);
+					signatures[b] = tx.getInput(j).signature;
+					b++;
+				}
+			}
+		}
+
+		boolean[] batchValid = new boolean[batchSize];
+		verifier.invoke(new VerifyTask(keys, messages, signatures, batchValid, 0, batchSize));
+		for (b = 0; b < batchSize; b++) {
+			valid[batch[b]] = batchValid[b];
+		}
+
+		k = 0;
+		for (int i : indices) {
+			byte state = SIG_VALID;
+			for (int j = 0; j < txs[i].numInputs(); j++, k++) {
+				if (!valid[k]) {
+					state = SIG_INVALID;
+				} else if (sigCache != null) {
+					sigCache.markVerified(txs[i], j, spent[i][j]);
+				}
+			}
+			sigState[i] = state;
+			spent[i] = null;
+		}
+	}
+
+	private static int countInputs(Transaction[] txs) {
+		int count = 0;
+		for (Transaction tx : txs) {
+			count += tx.numInputs();
+		}
+		return count;
+	}
+
+	/** Verifies the triples in [from, to), splitting the range until it is small. */
+	private static class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int BATCH = 4;
+
+		private final PublicKey[] keys;
+		private final byte[][] messages;
+		private final byte[][] signatures;
+		private final boolean[] valid;
+		private final int from;
+		private final int to;
+
+		VerifyTask(PublicKey[] keys, byte[][] messages, byte[][] signatures, boolean[] valid, int from, int to) {
+			this.keys = keys;
+			this.messages = messages;
+			this.signatures = signatures;
+			this.valid = valid;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH) {
+				Crypto.verifySignatures(keys, messages, signatures, valid, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new VerifyTask(keys, messages, signatures, valid, from, mid),
+					new VerifyTask(keys, messages, signatures, valid, mid, to));
+		}
+	}
+
+	private void addCreatedCoinsToPool(UTXOPool pool, Transaction tx) {
+		List<Transaction.Output> outputs = tx.getOutputs();
+		for (int j = 0; j < outputs.size(); j++) {
+			Transaction.Output output = outputs.get(j);
+			UTXO utxo = new UTXO(tx.getHash(), j);
+			pool.addUTXO(utxo, output);
+		}
+	}
+
+	private void removeConsumedCoinsFromPool(UTXOPool pool, Transaction tx) {
+		List<Transaction.Input> inputs = tx.getInputs();
+		for (int j = 0; j < inputs.size(); j++) {
+			Transaction.Input input = inputs.get(j);
+			UTXO utxo = new UTXO(input.prevTxHash, input.outputIndex);
+			pool.removeUTXO(utxo);
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Writes the raw encodings of transactions. The encodings are the plain concatenation used by
+ * {@code Transaction.getRawTx} and {@code Transaction.getRawDataToSign}:
+ * <ul>
+ * <li>input: prevTxHash, outputIndex (4 bytes, big endian), signature</li>
+ * <li>output: value (8 byte integer, big endian), public exponent, modulus (two's complement
+ * big endian, as {@code BigInteger.toByteArray})</li>
+ * <li>raw tx: all inputs, then all outputs</li>
+ * <li>data to sign for input i: prevTxHash and outputIndex of input i, then all outputs</li>
+ * </ul>
+ * Every encoding has a {@code size} method giving its exact length, a {@code write} method that
+ * puts it into a caller supplied buffer, and a {@code digest} method that feeds it straight into a
+ * {@code MessageDigest} without building the array at all.
+ * The exponent and modulus encodings come from the output's interned
+ * {@code AddressRegistry.Address}, so they are built once per key.
+ */
+final class TxSerializer {
+
+    private TxSerializer() {
+    }
+
+    /** @return the length of {@code tx.getRawTx()} */
+    static int rawTxSize(Transaction tx) {
+        int size = 0;
+        for (Transaction.Input in : tx.getInputs())
+            size += inputSize(in, true);
+        return size + outputsSize(tx);
+    }
+
+    /** Writes {@code tx.getRawTx()} at the position of {@code buf} */
+    static void writeRawTx(Transaction tx, ByteBuffer buf) {
+        for (Transaction.Input in : tx.getInputs())
+            writeInput(in, true, buf);
+        writeOutputs(tx, buf);
+    }
+
+    /**
+     * Writes {@code tx.getRawTx()} into {@code dst} starting at {@code offset}
+     *
+     * @return the number of bytes written
+     */
+    static int writeRawTx(Transaction tx, byte[] dst, int offset) {
+        ByteBuffer buf = ByteBuffer.wrap(dst, offset, dst.length - offset);
+        writeRawTx(tx, buf);
+        return buf.position() - offset;
+    }
+
+    /** Feeds {@code tx.getRawTx()} into {@code md} */
+    static void digestRawTx(Transaction tx, MessageDigest md) {
+        byte[] scratch = new byte[8];
+        for (Transaction.Input in : tx.getInputs())
+            digestInput(in, true, md, scratch);
+        digestOutputs(tx, md, scratch);
+    }
+
+    /** @return the length of {@code tx.getRawDataToSign(index)} */
+    static int rawDataToSignSize(Transaction tx, int index) {
+        return inputSize(tx.getInputs().get(index), false) + outputsSize(tx);
+    }
+
+    /** Writes {@code tx.getRawDataToSign(index)} at the position of {@code buf} */
+    static void writeRawDataToSign(Transaction tx, int index, ByteBuffer buf) {
+        writeInput(tx.getInputs().get(index), false, buf);
+        writeOutputs(tx, buf);
+    }
+
+    /** Feeds {@code tx.getRawDataToSign(index)} into {@code md} */
+    static void digestRawDataToSign(Transaction tx, int index, MessageDigest md) {
+        byte[] scratch = new byte[8];
+        digestInput(tx.getInputs().get(index), false, md, scratch);
+        digestOutputs(tx, md, scratch);
+    }
+
+    static int inputSize(Transaction.Input in, boolean withSignature) {
+        int size = Integer.BYTES;
+        if (in.prevTxHash != null)
+            size += in.prevTxHash.length;
+        if (withSignature && in.signature != null)
+            size += in.signature.length;
+        return size;
+    }
+
+    static int outputsSize(Transaction tx) {
+        int size = 0;
+        for (Transaction.Output op : tx.getOutputs())
+            size += Long.BYTES + op.getAddress().encodedSize();
+        return size;
+    }
+
+    static void writeInput(Transaction.Input in, boolean withSignature, ByteBuffer buf) {
+        if (in.prevTxHash != null)
+            buf.put(in.prevTxHash);
+        buf.putInt(in.outputIndex);
+        if (withSignature && in.signature != null)
+            buf.put(in.signature);
+    }
+
+    static void writeOutputs(Transaction tx, ByteBuffer buf) {
+        for (Transaction.Output op : tx.getOutputs()) {
+            AddressRegistry.Address address = op.getAddress();
+            buf.putLong(op.value);
+            buf.put(address.exponent);
+            buf.put(address.modulus);
+        }
+    }
+
+    private static void digestInput(Transaction.Input in, boolean withSignature, MessageDigest md, byte[] scratch) {
+        if (in.prevTxHash != null)
+            md.update(in.prevTxHash);
+        putLong(scratch, in.outputIndex, Integer.BYTES);
+        md.update(scratch, 0, Integer.BYTES);
+        if (withSignature && in.signature != null)
+            md.update(in.signature);
+    }
+
+    private static void digestOutputs(Transaction tx, MessageDigest md, byte[] scratch) {
+        for (Transaction.Output op : tx.getOutputs()) {
+            AddressRegistry.Address address = op.getAddress();
+            putLong(scratch, op.value, Long.BYTES);
+            md.update(scratch, 0, Long.BYTES);
+            md.update(address.exponent);
+            md.update(address.modulus);
+        }
+    }
+
+    /** Stores the low {@code width} bytes of {@code v} big endian at the start of {@code dst} */
+    private static void putLong(byte[] dst, long v, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            dst[i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+public class UTXO implements Comparable<UTXO> {
+
+    /** Length of a SHA-256 transaction hash, which is stored packed into four longs */
+    static final int HASH_LENGTH = 32;
+
+    /**
+     * Hash of the transaction from which this UTXO originates, big endian in {@code h0..h3} when it
+     * is {@code HASH_LENGTH} bytes long
+     */
+    private final long h0, h1, h2, h3;
+
+    /** Hash of the transaction from which this UTXO originates if it has any other length, else null */
+    private final byte[] otherHash;
+
+    /** Index of the corresponding output in said transaction */
+    private final int index;
+
+    /** cached {@link #hashCode()} */
+    private final int hash;
+
+    /**
+     * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
+     * hash is {@code txHash}
+     */
+    public UTXO(byte[] txHash, int index) {
+        if (txHash.length == HASH_LENGTH) {
+            h0 = getLong(txHash, 0);
+            h1 = getLong(txHash, 8);
+            h2 = getLong(txHash, 16);
+            h3 = getLong(txHash, 24);
+            otherHash = null;
+        } else {
+            h0 = h1 = h2 = h3 = 0;
+            otherHash = Arrays.copyOf(txHash, txHash.length);
+        }
+        this.index = index;
+        this.hash = hash(txHash, index);
+    }
+
+    /**
+     * Creates the UTXO for output {@code index} of the transaction whose {@code HASH_LENGTH} byte
+     * hash is {@code h0..h3}, big endian, without going through a byte array
+     */
+    UTXO(long h0, long h1, long h2, long h3, int index) {
+        this.h0 = h0;
+        this.h1 = h1;
+        this.h2 = h2;
+        this.h3 = h3;
+        this.otherHash = null;
+        this.index = index;
+        this.hash = hash(h0, h3, index);
+    }
+
+    /** @return a copy of the transaction hash of this UTXO */
+    public byte[] getTxHash() {
+        if (otherHash != null)
+            return otherHash.clone();
+        byte[] txHash = new byte[HASH_LENGTH];
+        putLong(txHash, 0, h0);
+        putLong(txHash, 8, h1);
+        putLong(txHash, 16, h2);
+        putLong(txHash, 24, h3);
+        return txHash;
+    }
+
+    /**
+     * @return true if the transaction hash is {@code HASH_LENGTH} bytes long, so that
+     *         {@link #getTxHashWord(int)} can read it without copying
+     */
+    boolean isPacked() {
+        return otherHash == null;
+    }
+
+    /**
+     * @return bytes {@code 8 * i} to {@code 8 * i + 7} of the transaction hash as a big endian long,
+     *         for a UTXO that {@link #isPacked()}. Unlike {@link #getTxHash()} this does not allocate.
+     */
+    long getTxHashWord(int i) {
+        switch (i) {
+        case 0:
+            return h0;
+        case 1:
+            return h1;
+        case 2:
+            return h2;
+        case 3:
+            return h3;
+        default:
+            throw new IndexOutOfBoundsException(i);
+        }
+    }
+
+    /** @return the index of this UTXO */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Compares this UTXO to the one specified by {@code other}, considering them equal if they have
+     * {@code txHash} arrays with equal contents and equal {@code index} values
+     */
+    public boolean equals(Object other) {
+        if (other == null) {
+            return false;
+        }
+        if (getClass() != other.getClass()) {
+            return false;
+        }
+
+        UTXO utxo = (UTXO) other;
+        if (hash != utxo.hash || index != utxo.index)
+            return false;
+        if (otherHash != null || utxo.otherHash != null)
+            return Arrays.equals(otherHash, utxo.otherHash);
+        return h0 == utxo.h0 && h1 == utxo.h1 && h2 == utxo.h2 && h3 == utxo.h3;
+    }
+
+    /**
+     * @return true if this UTXO is the output with index {@code index} of the transaction whose hash
+     *         is {@code txHash}; unlike {@code equals} this does not need a second UTXO
+     */
+    boolean matches(byte[] txHash, int index) {
+        if (this.index != index)
+            return false;
+        if (otherHash != null || txHash.length != HASH_LENGTH)
+            return Arrays.equals(otherHash, txHash);
+        return h0 == getLong(txHash, 0) && h1 == getLong(txHash, 8) && h2 == getLong(txHash, 16)
+                && h3 == getLong(txHash, 24);
+    }
+
+    /**
+     * Hash code that respects equality of UTXOs (i.e. utxo1.equals(utxo2) => utxo1.hashCode() ==
+     * utxo2.hashCode()), computed once when the UTXO is created
+     */
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the hash code of the UTXO for output {@code index} of the transaction whose hash is
+     *         {@code txHash}, without creating it
+     */
+    static int hash(byte[] txHash, int index) {
+        if (txHash.length != HASH_LENGTH)
+            return Arrays.hashCode(txHash) * 31 + index;
+        return hash(getLong(txHash, 0), getLong(txHash, 24), index);
+    }
+
+    /** @return the hash code of a UTXO whose transaction hash starts with {@code h0} and ends with {@code h3} */
+    static int hash(long h0, long h3, int index) {
+        // transaction hashes are uniformly distributed, a few of their bits are enough
+        long h = h0 ^ h3;
+        return (int) (h ^ (h >>> 32)) * 31 + index;
+    }
+
+    /** Compares this UTXO to the one specified by {@code utxo} */
+    public int compareTo(UTXO utxo) {
+        int in = utxo.index;
+        if (in > index)
+            return -1;
+        else if (in < index)
+            return 1;
+        if (otherHash != null || utxo.otherHash != null) {
+            int len1 = otherHash == null ? HASH_LENGTH : otherHash.length;
+            int len2 = utxo.otherHash == null ? HASH_LENGTH : utxo.otherHash.length;
+            if (len2 > len1)
+                return -1;
+            else if (len2 < len1)
+                return 1;
+            return compareBytes(otherHash, utxo.otherHash);
+        }
+        if (h0 != utxo.h0)
+            return compareBytes(h0, utxo.h0);
+        if (h1 != utxo.h1)
+            return compareBytes(h1, utxo.h1);
+        if (h2 != utxo.h2)
+            return compareBytes(h2, utxo.h2);
+        return h3 == utxo.h3 ? 0 : compareBytes(h3, utxo.h3);
+    }
+
+    /** compares the first byte in which {@code a} and {@code b} differ as a signed byte */
+    private static int compareBytes(long a, long b) {
+        int shift = 56 - (Long.numberOfLeadingZeros(a ^ b) & ~7);
+        return Integer.signum(Byte.compare((byte) (a >>> shift), (byte) (b >>> shift)));
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (b[i] > a[i])
+                return -1;
+            else if (b[i] < a[i])
+                return 1;
+        }
+        return 0;
+    }
+
+    /** reads 8 bytes of {@code b} from {@code off} as a big endian long */
+    static long getLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++)
+            v = (v << 8) | (b[off + i] & 0xFF);
+        return v;
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
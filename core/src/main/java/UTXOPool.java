@@ -0,0 +1,159 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class UTXOPool {
+
+    /**
+     * The current collection of UTXOs, with each one mapped to its corresponding transaction output.
+     * The trie is persistent, so pools copied from each other share all the entries they have in
+     * common. For a pool backed by a file it only holds the changes made since the last checkpoint,
+     * with removed UTXOs mapped to {@code MappedUTXOStore.TOMBSTONE}.
+     */
+    private UTXOTrie H;
+
+    /** The file this pool reads the UTXOs it has not changed from, or null if it lives on the heap */
+    private MappedUTXOStore store;
+
+    /** The generation of {@code store} this pool was created or last checkpointed at */
+    private MappedUTXOStore.Generation generation;
+
+    /** The number of UTXOs this pool has beyond the ones in its generation of {@code store} */
+    private long sizeChange;
+
+    /** Creates a new empty UTXOPool */
+    public UTXOPool() {
+        H = UTXOTrie.EMPTY;
+    }
+
+    /**
+     * Creates a new UTXOPool that is a copy of {@code uPool}. This takes constant time; later changes
+     * to either pool only copy the trie path they touch and are not visible in the other one.
+     */
+    public UTXOPool(UTXOPool uPool) {
+        H = uPool.H;
+        store = uPool.store;
+        generation = uPool.generation;
+        sizeChange = uPool.sizeChange;
+    }
+
+    /**
+     * Creates a UTXOPool backed by the memory-mapped store in {@code file}, which is created empty if
+     * it does not exist yet. An existing store is mapped as it is rather than read in, so the UTXOs
+     * stay off the heap; only changes made since the last {@link #checkpoint()} are held in memory.
+     * A file must not be opened by more than one pool at a time; copy that pool instead.
+     *
+     * @throws IOException if the file cannot be mapped or is not a UTXO store
+     */
+    public UTXOPool(File file) throws IOException {
+        H = UTXOTrie.EMPTY;
+        store = MappedUTXOStore.open(file);
+        generation = store.current();
+    }
+
+    /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
+    public void addUTXO(UTXO utxo, Transaction.Output txOut) {
+        if (store != null && getTxOutput(utxo) == null)
+            sizeChange++;
+        H = H.put(utxo, txOut);
+    }
+
+    /** Removes the UTXO {@code utxo} from the pool */
+    public void removeUTXO(UTXO utxo) {
+        if (store == null) {
+            H = H.remove(utxo);
+            return;
+        }
+        Transaction.Output changed = H.get(utxo);
+        boolean stored = store.get(generation, utxo) != null;
+        if (changed == null ? stored : changed != MappedUTXOStore.TOMBSTONE)
+            sizeChange--;
+        if (stored)
+            H = H.put(utxo, MappedUTXOStore.TOMBSTONE);
+        else
+            H = H.remove(utxo);
+    }
+
+    /**
+     * @return the transaction output corresponding to UTXO {@code utxo}, or null if {@code utxo} is
+     *         not in the pool.
+     */
+    public Transaction.Output getTxOutput(UTXO ut) {
+        Transaction.Output out = H.get(ut);
+        if (store == null || out != null)
+            return out == MappedUTXOStore.TOMBSTONE ? null : out;
+        return store.get(generation, ut);
+    }
+
+    /**
+     * @return the transaction output of the UTXO for output {@code index} of the transaction with
+     *         hash {@code txHash}, or null if it is not in the pool. Unlike
+     *         {@link #getTxOutput(UTXO)} this does not need a {@code UTXO} object.
+     */
+    public Transaction.Output getTxOutput(byte[] txHash, int index) {
+        Transaction.Output out = H.get(txHash, index);
+        if (store == null || out != null)
+            return out == MappedUTXOStore.TOMBSTONE ? null : out;
+        return store.get(generation, txHash, index);
+    }
+
+    /** @return true if UTXO {@code utxo} is in the pool and false otherwise */
+    public boolean contains(UTXO utxo) {
+        if (store == null)
+            return H.containsKey(utxo);
+        return getTxOutput(utxo) != null;
+    }
+
+    /**
+     * @return true if the UTXO for output {@code index} of the transaction with hash {@code txHash}
+     *         is in the pool and false otherwise
+     */
+    public boolean contains(byte[] txHash, int index) {
+        if (store == null)
+            return H.containsKey(txHash, index);
+        return getTxOutput(txHash, index) != null;
+    }
+
+    /**
+     * Writes the changes made to this pool to its file, after which the file holds exactly this
+     * pool's UTXOs. Pools copied from this one before the checkpoint keep their own contents but
+     * can no longer be checkpointed themselves. Does nothing for a pool that lives on the heap.
+     *
+     * @throws IOException if the store cannot be written
+     * @throws IllegalStateException if another pool sharing the file checkpointed after this one was
+     *         copied
+     */
+    public void checkpoint() throws IOException {
+        if (store == null)
+            return;
+        generation = store.checkpoint(generation, H);
+        H = UTXOTrie.EMPTY;
+        sizeChange = 0;
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        if (store == null)
+            return H.size();
+        return (int) (generation.size() + sizeChange);
+    }
+
+    /** Returns an {@code ArrayList} of all UTXOs in the pool */
+    public ArrayList<UTXO> getAllUTXO() {
+        if (store == null) {
+            ArrayList<UTXO> allUTXO = new ArrayList<UTXO>(H.size());
+            H.collectKeys(allUTXO);
+            return allUTXO;
+        }
+        ArrayList<UTXO> changed = new ArrayList<UTXO>(H.size());
+        H.collectKeys(changed);
+        ArrayList<UTXO> allUTXO = new ArrayList<UTXO>();
+        for (UTXO utxo : store.keys(generation))
+            if (H.get(utxo) == null)
+                allUTXO.add(utxo);
+        for (UTXO utxo : changed)
+            if (H.get(utxo) != MappedUTXOStore.TOMBSTONE)
+                allUTXO.add(utxo);
+        return allUTXO;
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Set of UTXOs given as (transaction hash, output index) pairs, stored without any {@code UTXO}
+ * objects: each slot of an open addressing table holds the hash packed into four longs next to the
+ * index, and lookups probe linearly. Meant for short-lived sets such as the outputs one transaction
+ * claims, where allocating a key per input would dominate the cost.
+ */
+final class UTXOSet {
+
+    private int[] hashes;
+    private long[] words;
+    private int[] indexes;
+    private boolean[] used;
+    /** hashes that are not {@code UTXO.HASH_LENGTH} bytes long, by slot; null until one is added */
+    private byte[][] otherHashes;
+    private int size;
+
+    /** Creates an empty set that holds {@code expected} UTXOs without growing */
+    UTXOSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /** @return the number of UTXOs in the set */
+    int size() {
+        return size;
+    }
+
+    /** Removes every UTXO, keeping the table for reuse */
+    void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(used, false);
+        otherHashes = null;
+        size = 0;
+    }
+
+    /** @return true if the set holds output {@code index} of the transaction with hash {@code txHash} */
+    boolean contains(byte[] txHash, int index) {
+        return used[slotOf(txHash, index, UTXO.hash(txHash, index))];
+    }
+
+    /**
+     * Adds output {@code index} of the transaction with hash {@code txHash}
+     *
+     * @return true if it was not in the set yet
+     */
+    boolean add(byte[] txHash, int index) {
+        int hash = UTXO.hash(txHash, index);
+        int slot = slotOf(txHash, index, hash);
+        if (used[slot])
+            return false;
+        if ((size + 1) * 2 > used.length) {
+            grow();
+            slot = slotOf(txHash, index, hash);
+        }
+        store(slot, hash, txHash, index);
+        size++;
+        return true;
+    }
+
+    /** @return the slot holding the UTXO, or the free slot where it belongs */
+    private int slotOf(byte[] txHash, int index, int hash) {
+        int mask = used.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (used[slot]) {
+            if (hashes[slot] == hash && indexes[slot] == index && matches(slot, txHash))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int slot, byte[] txHash) {
+        byte[] other = otherHashes == null ? null : otherHashes[slot];
+        if (other != null || txHash.length != UTXO.HASH_LENGTH)
+            return Arrays.equals(other, txHash);
+        int w = slot * 4;
+        return words[w] == UTXO.getLong(txHash, 0) && words[w + 1] == UTXO.getLong(txHash, 8)
+                && words[w + 2] == UTXO.getLong(txHash, 16) && words[w + 3] == UTXO.getLong(txHash, 24);
+    }
+
+    private void store(int slot, int hash, byte[] txHash, int index) {
+        used[slot] = true;
+        hashes[slot] = hash;
+        indexes[slot] = index;
+        if (txHash.length == UTXO.HASH_LENGTH) {
+            int w = slot * 4;
+            words[w] = UTXO.getLong(txHash, 0);
+            words[w + 1] = UTXO.getLong(txHash, 8);
+            words[w + 2] = UTXO.getLong(txHash, 16);
+            words[w + 3] = UTXO.getLong(txHash, 24);
+        } else {
+            if (otherHashes == null)
+                otherHashes = new byte[used.length][];
+            otherHashes[slot] = txHash.clone();
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        words = new long[capacity * 4];
+        indexes = new int[capacity];
+        used = new boolean[capacity];
+        otherHashes = null;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        long[] oldWords = words;
+        int[] oldIndexes = indexes;
+        boolean[] oldUsed = used;
+        byte[][] oldOthers = otherHashes;
+        allocate(oldUsed.length * 2);
+        int mask = used.length - 1;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (!oldUsed[i])
+                continue;
+            int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+            while (used[slot])
+                slot = (slot + 1) & mask;
+            used[slot] = true;
+            hashes[slot] = oldHashes[i];
+            indexes[slot] = oldIndexes[i];
+            System.arraycopy(oldWords, i * 4, words, slot * 4, 4);
+            if (oldOthers != null && oldOthers[i] != null) {
+                if (otherHashes == null)
+                    otherHashes = new byte[used.length][];
+                otherHashes[slot] = oldOthers[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+
+/**
+ * Persistent hash array mapped trie from {@code UTXO} to {@code Transaction.Output}. A trie is never
+ * modified in place: {@code put} and {@code remove} return a new trie that shares every untouched
+ * node with the old one, so taking a copy is free and an update only copies the path from the root
+ * to the changed entry (at most seven nodes).
+ */
+final class UTXOTrie {
+
+    static final UTXOTrie EMPTY = new UTXOTrie(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** a single key/value pair stored in the trie */
+    private static final class Entry {
+        final int hash;
+        final UTXO key;
+        final Transaction.Output value;
+
+        Entry(int hash, UTXO key, Transaction.Output value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** entries whose keys have the same 32 bit hash */
+    private static final class Collision {
+        final int hash;
+        final Entry[] entries;
+
+        Collision(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+    }
+
+    /** interior node; each slot holds an {@code Entry}, a {@code Collision} or a child {@code Node} */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private UTXOTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** @return the number of UTXOs in the trie */
+    int size() {
+        return size;
+    }
+
+    /** @return the output mapped to {@code key}, or null if there is none */
+    Transaction.Output get(UTXO key) {
+        Entry e = find(key.hashCode(), key, null, 0);
+        return e == null ? null : e.value;
+    }
+
+    /** @return the output mapped to the UTXO ({@code txHash}, {@code index}), or null if there is none */
+    Transaction.Output get(byte[] txHash, int index) {
+        Entry e = find(UTXO.hash(txHash, index), null, txHash, index);
+        return e == null ? null : e.value;
+    }
+
+    /** @return true if the trie has a mapping for {@code key} */
+    boolean containsKey(UTXO key) {
+        return find(key.hashCode(), key, null, 0) != null;
+    }
+
+    /** @return true if the trie has a mapping for the UTXO ({@code txHash}, {@code index}) */
+    boolean containsKey(byte[] txHash, int index) {
+        return find(UTXO.hash(txHash, index), null, txHash, index) != null;
+    }
+
+    /**
+     * Looks up {@code key}, or the UTXO ({@code txHash}, {@code index}) if {@code key} is null, in
+     * which case nothing is allocated
+     */
+    private Entry find(int keyHash, UTXO key, byte[] txHash, int index) {
+        int hash = spread(keyHash);
+        Node node = root;
+        int shift = 0;
+        while (node != null) {
+            int bit = bitFor(hash, shift);
+            if ((node.bitmap & bit) == 0)
+                return null;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                shift += BITS;
+            } else if (slot instanceof Entry) {
+                Entry e = (Entry) slot;
+                return e.hash == hash && matches(e, key, txHash, index) ? e : null;
+            } else {
+                Collision c = (Collision) slot;
+                if (c.hash != hash)
+                    return null;
+                for (Entry e : c.entries)
+                    if (matches(e, key, txHash, index))
+                        return e;
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(Entry e, UTXO key, byte[] txHash, int index) {
+        return key != null ? e.key.equals(key) : e.key.matches(txHash, index);
+    }
+
+    /** @return a trie with {@code key} mapped to {@code value} */
+    UTXOTrie put(UTXO key, Transaction.Output value) {
+        int[] added = new int[1];
+        Entry entry = new Entry(spread(key.hashCode()), key, value);
+        Node newRoot = root == null
+                ? new Node(bitFor(entry.hash, 0), new Object[] { entry })
+                : put(root, 0, entry, added);
+        if (root == null)
+            added[0] = 1;
+        if (newRoot == root)
+            return this;
+        return new UTXOTrie(newRoot, size + added[0]);
+    }
+
+    /** @return a trie without {@code key} */
+    UTXOTrie remove(UTXO key) {
+        if (root == null)
+            return this;
+        Object newRoot = remove(root, 0, spread(key.hashCode()), key);
+        if (newRoot == root)
+            return this;
+        if (newRoot == null)
+            return EMPTY;
+        if (!(newRoot instanceof Node))
+            newRoot = new Node(bitFor(hashOf(newRoot), 0), new Object[] { newRoot });
+        return new UTXOTrie((Node) newRoot, size - 1);
+    }
+
+    /** Appends every key in the trie to {@code out} */
+    void collectKeys(ArrayList<UTXO> out) {
+        if (root != null)
+            collectKeys(root, out);
+    }
+
+    private static void collectKeys(Node node, ArrayList<UTXO> out) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Node)
+                collectKeys((Node) slot, out);
+            else if (slot instanceof Entry)
+                out.add(((Entry) slot).key);
+            else
+                for (Entry e : ((Collision) slot).entries)
+                    out.add(e.key);
+        }
+    }
+
+    private static Node put(Node node, int shift, Entry entry, int[] added) {
+        int bit = bitFor(entry.hash, shift);
+        int idx = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = 1;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, idx);
+            slots[idx] = entry;
+            System.arraycopy(node.slots, idx, slots, idx + 1, node.slots.length - idx);
+            return new Node(node.bitmap | bit, slots);
+        }
+
+        Object slot = node.slots[idx];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, shift + BITS, entry, added);
+        } else if (slot instanceof Entry) {
+            Entry e = (Entry) slot;
+            if (e.hash == entry.hash && e.key.equals(entry.key)) {
+                replacement = e.value == entry.value ? e : entry;
+            } else {
+                added[0] = 1;
+                replacement = merge(e, entry, shift + BITS);
+            }
+        } else {
+            Collision c = (Collision) slot;
+            if (c.hash == entry.hash) {
+                replacement = putCollision(c, entry, added);
+            } else {
+                added[0] = 1;
+                replacement = merge(c, entry, shift + BITS);
+            }
+        }
+        if (replacement == slot)
+            return node;
+        Object[] slots = node.slots.clone();
+        slots[idx] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Collision putCollision(Collision c, Entry entry, int[] added) {
+        for (int i = 0; i < c.entries.length; i++) {
+            if (c.entries[i].key.equals(entry.key)) {
+                if (c.entries[i].value == entry.value)
+                    return c;
+                Entry[] entries = c.entries.clone();
+                entries[i] = entry;
+                return new Collision(c.hash, entries);
+            }
+        }
+        added[0] = 1;
+        Entry[] entries = new Entry[c.entries.length + 1];
+        System.arraycopy(c.entries, 0, entries, 0, c.entries.length);
+        entries[c.entries.length] = entry;
+        return new Collision(c.hash, entries);
+    }
+
+    /** builds the smallest subtree holding two leaves ({@code Entry} or {@code Collision}) */
+    private static Object merge(Object a, Entry b, int shift) {
+        int hashA = hashOf(a);
+        if (hashA == b.hash) {
+            // only reachable with two entries, collisions with the same hash are handled by the caller
+            return new Collision(b.hash, new Entry[] { (Entry) a, b });
+        }
+        int bitA = bitFor(hashA, shift);
+        int bitB = bitFor(b.hash, shift);
+        if (bitA == bitB)
+            return new Node(bitA, new Object[] { merge(a, b, shift + BITS) });
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+        return new Node(bitA | bitB, slots);
+    }
+
+    /**
+     * @return the replacement for {@code node}: {@code node} itself if nothing changed, null if it
+     *         became empty, or a lone leaf that the parent can inline
+     */
+    private static Object remove(Node node, int shift, int hash, UTXO key) {
+        int bit = bitFor(hash, shift);
+        if ((node.bitmap & bit) == 0)
+            return node;
+        int idx = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[idx];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = remove((Node) slot, shift + BITS, hash, key);
+        } else if (slot instanceof Entry) {
+            Entry e = (Entry) slot;
+            if (e.hash != hash || !e.key.equals(key))
+                return node;
+            replacement = null;
+        } else {
+            Collision c = (Collision) slot;
+            if (c.hash != hash)
+                return node;
+            replacement = removeCollision(c, key);
+        }
+        if (replacement == slot)
+            return node;
+
+        if (replacement == null) {
+            if (node.slots.length == 1)
+                return null;
+            if (node.slots.length == 2 && shift > 0 && !(node.slots[idx ^ 1] instanceof Node))
+                return node.slots[idx ^ 1];
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, idx);
+            System.arraycopy(node.slots, idx + 1, slots, idx, slots.length - idx);
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (node.slots.length == 1 && shift > 0 && !(replacement instanceof Node))
+            return replacement;
+        Object[] slots = node.slots.clone();
+        slots[idx] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Object removeCollision(Collision c, UTXO key) {
+        for (int i = 0; i < c.entries.length; i++) {
+            if (c.entries[i].key.equals(key)) {
+                if (c.entries.length == 2)
+                    return c.entries[i ^ 1];
+                Entry[] entries = new Entry[c.entries.length - 1];
+                System.arraycopy(c.entries, 0, entries, 0, i);
+                System.arraycopy(c.entries, i + 1, entries, i, entries.length - i);
+                return new Collision(c.hash, entries);
+            }
+        }
+        return c;
+    }
+
+    private static int hashOf(Object leaf) {
+        return leaf instanceof Entry ? ((Entry) leaf).hash : ((Collision) leaf).hash;
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** mixes the high bits into the low ones, which select the slots near the root */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * The outcome of checking a transaction: {@link #VALID}, or the first check it failed. The checks
+ * run cheapest first, in the order of the constants: what can be seen on the transaction alone, then
+ * lookups in the UTXO set, then RSA verification of the signatures. An unsigned input is found with
+ * the structural checks, before any lookup, but reported as {@link #BAD_SIGNATURE} all the same.
+ *
+ * <p>
+ * Only {@link #MISSING_INPUT} can turn into {@code VALID} later, when the transaction creating the
+ * output is seen; every other result is final for the transaction, whatever else arrives.
+ */
+public enum ValidationResult {
+    /** passes every check */
+    VALID,
+    /** has no hash where one is needed, or an input has no previous transaction hash */
+    MALFORMED,
+    /** an output value is zero or negative */
+    NEGATIVE_OUTPUT,
+    /** two inputs claim the same output */
+    DOUBLE_CLAIM,
+    /** an input claims an output that is not in the UTXO set */
+    MISSING_INPUT,
+    /** the outputs are worth more than the outputs claimed, or more than any amount can be */
+    INSUFFICIENT_INPUT,
+    /** an input is unsigned or its signature does not verify for the output it claims */
+    BAD_SIGNATURE;
+
+    public boolean isValid() {
+        return this == VALID;
+    }
+
+    /**
+     * @return true if the transaction may become valid once more transactions are known, so it is
+     *         worth keeping aside rather than dropping
+     */
+    public boolean isRetryable() {
+        return this == MISSING_INPUT;
+    }
+}
@@ -0,0 +1,1089 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.*;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+public class TxHandlerTest {
+    static KeyPair kpAlice;
+    static KeyPair kpBob;
+    static KeyPair kpCal;
+
+    @BeforeClass
+    public static void beforeClass() {
+
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+            kpAlice = kpg.generateKeyPair();
+            kpBob = kpg.generateKeyPair();
+            kpCal = kpg.generateKeyPair();
+        }
+        catch(GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Test if all outputs claimed by transactions are in the current UTXO pool.
+     */
+    @Test
+    public void testOutputsInUTXOPool() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is NOT put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, 20 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(20, kpCal.getPublic());
+
+        // Sign for tx1
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+        tx1.finalize();
+
+        // UTXO pool does not contains the UTXO
+        assertFalse(txHandler.isValidTx(tx1));
+
+        // Put output of createCoinTx to the pool
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler1 = new TxHandler(utxoPool);
+
+        // UTXO pool now contains the UTXO
+        assertTrue(txHandler1.isValidTx(tx1));
+    }
+
+    /**
+     * Test the signatures on each input of transactions are valid.
+     */
+    @Test
+    public void testValidSig() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, 20 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(20, kpCal.getPublic());
+
+        // Sign for tx1 with Bob's kp, which is incorrect
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpBob.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+        tx1.finalize();
+
+        assertFalse(txHandler.isValidTx(tx1));
+
+        // Sign for tx1 with Alice's kp, which is now correct
+        byte[] sig2 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig2 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig2);
+        tx1.finalize();
+
+        assertTrue(txHandler.isValidTx(tx1));
+    }
+
+    /**
+     * Test for double spending.
+     */
+    @Test
+    public void testNoDoubleSpending() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, 20 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(20, kpCal.getPublic());
+
+        // Alice wants double spending: transfers 10 coins to Bob, 20 to Cal again
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(20, kpCal.getPublic());
+
+        // Sign for tx1: input 0
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+
+        // Sign for tx1: input 1
+        byte[] sig2 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig2 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(1).addSignature(sig2);
+        tx1.finalize();
+
+        assertFalse(txHandler.isValidTx(tx1));
+    }
+
+    /**
+     * Test for non-negative output values.
+     */
+    @Test
+    public void testValidOutputValues() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, -20 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(-20, kpCal.getPublic());
+
+        // Sign for tx1 with Alice's kp
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+        tx1.finalize();
+
+        assertFalse(txHandler.isValidTx(tx1));
+    }
+
+    /**
+     * Test for if the sum of input values is greater than or equal to the sum of its output.
+     */
+    @Test
+    public void testValidBalance() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, 100 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(100, kpCal.getPublic());
+
+        // Sign for tx1 with Alice's kp
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+        tx1.finalize();
+
+        assertFalse(txHandler.isValidTx(tx1));
+    }
+
+    /**
+     * Test for method: handleTxs
+     */
+    @Test
+    public void testHandleTxs() {
+
+        // Creates 100 coins to Alice
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        // Output of createCoinTx is put in UTXO pool
+        UTXOPool utxoPool = new UTXOPool();
+        UTXO utxo = new UTXO(createCoinTx.getHash(), 0);
+        utxoPool.addUTXO(utxo, createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        // Alice transfers 10 coins to Bob, 20 to Cal
+        Transaction tx1 = new Transaction();
+        tx1.addInput(createCoinTx.getHash(), 0);
+        tx1.addOutput(10, kpBob.getPublic());
+        tx1.addOutput(20, kpCal.getPublic());
+
+        // Sign for tx1
+        byte[] sig1 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx1.getRawDataToSign(0));
+            sig1 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx1.getInput(0).addSignature(sig1);
+        tx1.finalize();
+
+        // Cal transfers 5 coins to Bob, Bob transfers 2 coins to Alice
+        Transaction tx2 = new Transaction();
+        tx2.addInput(tx1.getHash(), 0);  // index 0 refers to output 1 of tx1
+        tx2.addInput(tx1.getHash(), 1);  // index 1 refers to output 1 of tx1
+        tx2.addOutput(2, kpAlice.getPublic());
+        tx2.addOutput(5, kpBob.getPublic());
+
+        // Sign for tx2
+        byte[] sig2 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpBob.getPrivate());
+            sig.update(tx2.getRawDataToSign(0));
+            sig2 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx2.getInput(0).addSignature(sig2);
+
+        byte[] sig3 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpCal.getPrivate());
+            sig.update(tx2.getRawDataToSign(1));
+            sig3 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx2.getInput(1).addSignature(sig3);
+        tx2.finalize();
+
+        // Alice transfers 3 coins to Cal
+        Transaction tx3 = new Transaction();
+        tx3.addInput(tx2.getHash(), 0);
+        tx3.addOutput(3, kpCal.getPublic());
+
+        // Sign for tx3
+        byte[] sig4 = null;
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(kpAlice.getPrivate());
+            sig.update(tx3.getRawDataToSign(0));
+            sig4 = sig.sign();
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            e.printStackTrace();
+        }
+        tx3.getInput(0).addSignature(sig4);
+        tx3.finalize();
+
+        Transaction[] acceptedTx = txHandler.handleTxs(new Transaction[] {tx1, tx2, tx3});
+        // tx1, tx2 supposed to be valid, tx3 supposed to be invalid
+        assertEquals(acceptedTx.length, 2);
+        // assertFalse(txHandler.isValidTx(tx3));
+    }
+
+    /**
+     * Test that validate names the check a transaction fails, cheapest check first.
+     */
+    @Test
+    public void testValidationResults() throws GeneralSecurityException {
+
+        // Creates 100 coins to Alice, in UTXO pool
+        Transaction createCoinTx = new Transaction();
+        createCoinTx.addOutput(100, kpAlice.getPublic());
+        createCoinTx.finalize();
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(createCoinTx.getHash(), 0), createCoinTx.getOutput(0));
+        TxHandler txHandler = new TxHandler(utxoPool);
+        byte[] coin = createCoinTx.getHash();
+
+        assertEquals(ValidationResult.VALID, txHandler.validate(spend(kpAlice, coin, new int[] {0}, 10)));
+        assertEquals(ValidationResult.NEGATIVE_OUTPUT, txHandler.validate(spend(kpAlice, coin, new int[] {0}, -1)));
+        assertEquals(ValidationResult.DOUBLE_CLAIM, txHandler.validate(spend(kpAlice, coin, new int[] {0, 0}, 10)));
+        assertEquals(ValidationResult.MISSING_INPUT, txHandler.validate(spend(kpAlice, coin, new int[] {1}, 10)));
+        assertEquals(ValidationResult.INSUFFICIENT_INPUT, txHandler.validate(spend(kpAlice, coin, new int[] {0}, 101)));
+        assertEquals(ValidationResult.BAD_SIGNATURE, txHandler.validate(spend(kpBob, coin, new int[] {0}, 10)));
+
+        // structural checks come before the UTXO lookups, and those before RSA
+        assertEquals(ValidationResult.NEGATIVE_OUTPUT, txHandler.validate(spend(kpBob, coin, new int[] {1}, 0)));
+        assertEquals(ValidationResult.MISSING_INPUT, txHandler.validate(spend(kpBob, coin, new int[] {1}, 10)));
+
+        // unsigned
+        Transaction tx = new Transaction();
+        tx.addInput(coin, 0);
+        tx.addOutput(10, kpBob.getPublic());
+        tx.finalize();
+        assertEquals(ValidationResult.BAD_SIGNATURE, txHandler.validate(tx));
+
+        assertTrue(ValidationResult.MISSING_INPUT.isRetryable());
+        assertFalse(ValidationResult.BAD_SIGNATURE.isRetryable());
+    }
+
+    /**
+     * Test that handleTxs verifying a large batch on a fork-join pool accepts the same transactions
+     * and leaves the same UTXOs as the serial algorithm, with bad signatures, double spends and
+     * children of rejected transactions in the batch.
+     */
+    @Test
+    public void testParallelHandleTxs() throws GeneralSecurityException {
+        Transaction fund = new Transaction();
+        for (int i = 0; i < 24; i++)
+            fund.addOutput(10, kpAlice.getPublic());
+        fund.finalize();
+        UTXOPool utxoPool = new UTXOPool();
+        for (int i = 0; i < fund.numOutputs(); i++)
+            utxoPool.addUTXO(new UTXO(fund.getHash(), i), fund.getOutput(i));
+
+        ArrayList<Transaction> batch = new ArrayList<Transaction>();
+        for (int i = 0; i < 20; i++)
+            batch.add(spend(kpAlice, fund.getHash(), new int[] { i }, 5));
+        Transaction badSig = spend(kpBob, fund.getHash(), new int[] { 20 }, 5);
+        Transaction childOfBad = spend(kpBob, badSig.getHash(), new int[] { 0 }, 5);
+        Transaction child = spend(kpBob, batch.get(1).getHash(), new int[] { 0 }, 3);
+        Transaction early = spend(kpBob, batch.get(19).getHash(), new int[] { 0 }, 4);
+        batch.add(7, badSig);
+        batch.add(3, early);
+        batch.add(childOfBad);
+        batch.add(spend(kpAlice, fund.getHash(), new int[] { 20 }, 6));
+        batch.add(spend(kpAlice, fund.getHash(), new int[] { 0 }, 7));
+        batch.add(child);
+        batch.add(spend(kpAlice, fund.getHash(), new int[] { 21, 22, 23 }, 30));
+        Transaction[] txs = batch.toArray(new Transaction[0]);
+
+        ForkJoinPool verifier = new ForkJoinPool(4);
+        try {
+            TxHandler parallel = new TxHandler(utxoPool, verifier, null);
+            TxHandler serial = new TxHandler(utxoPool, null, null);
+            Transaction[] expected = serial.handleTxs(txs);
+            Transaction[] accepted = parallel.handleTxs(txs);
+            assertEquals(23, expected.length);
+            assertEquals(expected.length, accepted.length);
+            for (int i = 0; i < expected.length; i++)
+                assertSame(expected[i], accepted[i]);
+            assertEquals(new HashSet<UTXO>(serial.getUtxoPool().getAllUTXO()),
+                    new HashSet<UTXO>(parallel.getUtxoPool().getAllUTXO()));
+        } finally {
+            verifier.shutdown();
+        }
+    }
+
+    /**
+     * @return a transaction spending the outputs {@code indices} of the transaction {@code prevHash},
+     *         paying each of {@code values} to Bob, signed by {@code signer}
+     */
+    private static Transaction spend(KeyPair signer, byte[] prevHash, int[] indices, long... values)
+            throws GeneralSecurityException {
+        Transaction tx = new Transaction();
+        for (int index : indices)
+            tx.addInput(prevHash, index);
+        for (long value : values)
+            tx.addOutput(value, kpBob.getPublic());
+        for (int i = 0; i < indices.length; i++) {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(signer.getPrivate());
+            sig.update(tx.getRawDataToSign(i));
+            tx.addSignature(sig.sign(), i);
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    /**
+     * Test that a key decoded again compares equal to the original in outputs, and that the
+     * registry drops addresses no output refers to any more.
+     */
+    @Test
+    public void testAddressInterning() throws GeneralSecurityException, InterruptedException {
+        KeyFactory factory = KeyFactory.getInstance("RSA");
+        PublicKey decoded = factory.generatePublic(new X509EncodedKeySpec(kpBob.getPublic().getEncoded()));
+        assertNotSame(kpBob.getPublic(), decoded);
+
+        Transaction tx = new Transaction();
+        tx.addOutput(10, kpBob.getPublic());
+        tx.addOutput(10, decoded);
+        tx.addOutput(10, kpCal.getPublic());
+        assertEquals(tx.getOutput(0), tx.getOutput(1));
+        assertEquals(tx.getOutput(0).hashCode(), tx.getOutput(1).hashCode());
+        assertSame(tx.getOutput(0).getAddress(), tx.getOutput(1).getAddress());
+        assertNotEquals(tx.getOutput(0), tx.getOutput(2));
+
+        // a public field assigned a decoded key after construction
+        tx.getOutput(2).address = factory.generatePublic(new X509EncodedKeySpec(kpBob.getPublic().getEncoded()));
+        assertEquals(tx.getOutput(0), tx.getOutput(2));
+
+        AddressRegistry registry = new AddressRegistry();
+        AddressRegistry.Address address = registry.intern(kpAlice.getPublic());
+        assertSame(address, registry.intern(factory.generatePublic(
+                new X509EncodedKeySpec(kpAlice.getPublic().getEncoded()))));
+        assertEquals(1, registry.size());
+        int id = address.getId();
+        address = null;
+        for (int i = 0; i < 100 && registry.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, registry.size());
+        assertNotEquals(id, registry.intern(kpAlice.getPublic()).getId());
+    }
+
+    /** @return the raw tx, built byte by byte the way {@code Transaction} used to */
+    private static byte[] legacyRawTx(Transaction tx) {
+        ArrayList<Byte> rawTx = new ArrayList<Byte>();
+        for (Transaction.Input in : tx.getInputs()) {
+            legacyAdd(rawTx, in.prevTxHash);
+            legacyAdd(rawTx, ByteBuffer.allocate(Integer.BYTES).putInt(in.outputIndex).array());
+            legacyAdd(rawTx, in.signature);
+        }
+        legacyAddOutputs(rawTx, tx);
+        return legacyToArray(rawTx);
+    }
+
+    /** @return the data to sign for input {@code index}, built byte by byte the way {@code Transaction} used to */
+    private static byte[] legacyRawDataToSign(Transaction tx, int index) {
+        ArrayList<Byte> sigData = new ArrayList<Byte>();
+        Transaction.Input in = tx.getInput(index);
+        legacyAdd(sigData, in.prevTxHash);
+        legacyAdd(sigData, ByteBuffer.allocate(Integer.BYTES).putInt(in.outputIndex).array());
+        legacyAddOutputs(sigData, tx);
+        return legacyToArray(sigData);
+    }
+
+    private static void legacyAddOutputs(ArrayList<Byte> data, Transaction tx) {
+        for (Transaction.Output op : tx.getOutputs()) {
+            legacyAdd(data, ByteBuffer.allocate(Long.BYTES).putLong(op.value).array());
+            legacyAdd(data, ((RSAPublicKey) op.address).getPublicExponent().toByteArray());
+            legacyAdd(data, ((RSAPublicKey) op.address).getModulus().toByteArray());
+        }
+    }
+
+    private static void legacyAdd(ArrayList<Byte> data, byte[] bytes) {
+        if (bytes != null)
+            for (byte b : bytes)
+                data.add(b);
+    }
+
+    private static byte[] legacyToArray(ArrayList<Byte> data) {
+        byte[] array = new byte[data.size()];
+        int i = 0;
+        for (Byte b : data)
+            array[i++] = b;
+        return array;
+    }
+
+    /**
+     * Test that the raw tx, the data to sign and the hash match the byte by byte encoding exactly.
+     */
+    @Test
+    public void testRawEncodings() throws GeneralSecurityException {
+        Transaction coin = new Transaction(100, kpAlice.getPublic());
+        Transaction tx = new Transaction();
+        tx.addInput(coin.getHash(), 0);
+        tx.addInput(coin.getHash(), 1);
+        tx.addInput(new byte[] { 1, 2, 3 }, -1);
+        tx.addInput(null, 7);
+        tx.addOutput(1, kpBob.getPublic());
+        tx.addOutput(Long.MAX_VALUE, kpCal.getPublic());
+        tx.addOutput(255, kpAlice.getPublic());
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(tx.getRawDataToSign(0));
+        tx.addSignature(sig.sign(), 0);
+        tx.addSignature(new byte[] { -1, 0, 1 }, 2);
+        tx.finalize();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < tx.numInputs(); i++) {
+            byte[] data = legacyRawDataToSign(tx, i);
+            assertArrayEquals(data, tx.getRawDataToSign(i));
+            assertEquals(data.length, TxSerializer.rawDataToSignSize(tx, i));
+            ByteBuffer buf = ByteBuffer.allocate(data.length + 2);
+            buf.position(2);
+            TxSerializer.writeRawDataToSign(tx, i, buf);
+            assertEquals(buf.capacity(), buf.position());
+            assertArrayEquals(data, Arrays.copyOfRange(buf.array(), 2, buf.capacity()));
+            TxSerializer.digestRawDataToSign(tx, i, md);
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), md.digest());
+        }
+        byte[] raw = legacyRawTx(tx);
+        assertArrayEquals(raw, tx.getRawTx());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(raw), tx.getHash());
+        assertEquals(raw.length, TxSerializer.rawTxSize(tx));
+
+        ByteBuffer buf = ByteBuffer.allocate(raw.length + 5);
+        buf.position(3);
+        TxSerializer.writeRawTx(tx, buf);
+        assertEquals(raw.length + 3, buf.position());
+        assertArrayEquals(raw, Arrays.copyOfRange(buf.array(), 3, raw.length + 3));
+        byte[] dst = new byte[raw.length + 4];
+        assertEquals(raw.length, TxSerializer.writeRawTx(tx, dst, 4));
+        assertArrayEquals(raw, Arrays.copyOfRange(dst, 4, dst.length));
+        TxSerializer.digestRawTx(tx, md);
+        assertArrayEquals(tx.getHash(), md.digest());
+
+        assertArrayEquals(legacyRawTx(coin), coin.getRawTx());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(legacyRawTx(coin)), coin.getHash());
+    }
+
+    /**
+     * Test whether a pool backed by a file keeps its UTXOs across a reopen, and whether a copy taken
+     * before a checkpoint keeps its own contents.
+     */
+    @Test
+    public void testMappedUTXOPool() throws IOException {
+        File file = File.createTempFile("utxo", ".idx");
+        file.delete();
+        File keyFile = new File(file.getPath() + ".keys");
+        try {
+            Transaction tx = new Transaction();
+            tx.addOutput(10, kpAlice.getPublic());
+            tx.addOutput(15, kpBob.getPublic());
+            tx.finalize();
+            UTXO first = new UTXO(tx.getHash(), 0);
+            UTXO second = new UTXO(tx.getHash(), 1);
+
+            UTXOPool pool = new UTXOPool(file);
+            pool.addUTXO(first, tx.getOutput(0));
+            pool.addUTXO(second, tx.getOutput(1));
+            pool.checkpoint();
+            UTXOPool before = new UTXOPool(pool);
+            pool.removeUTXO(first);
+            pool.checkpoint();
+
+            UTXOPool reopened = new UTXOPool(file);
+            assertFalse(reopened.contains(first));
+            assertEquals(tx.getOutput(1), reopened.getTxOutput(second));
+            assertEquals(1, reopened.getAllUTXO().size());
+            assertEquals(1, reopened.size());
+
+            assertEquals(tx.getOutput(0), before.getTxOutput(first));
+            assertEquals(2, before.getAllUTXO().size());
+            assertEquals(2, before.size());
+            assertEquals(1, pool.size());
+        } finally {
+            file.delete();
+            keyFile.delete();
+        }
+    }
+
+    /**
+     * Test whether a file-backed pool counts and keeps its UTXOs while its table grows, including a
+     * copy taken before the growth.
+     */
+    @Test
+    public void testMappedUTXOPoolGrowth() throws IOException {
+        File file = File.createTempFile("utxo", ".idx");
+        file.delete();
+        try {
+            UTXOPool pool = new UTXOPool(file);
+            UTXOPool heap = new UTXOPool();
+            UTXOPool before = null;
+            ArrayList<UTXO> utxos = new ArrayList<UTXO>();
+            for (int i = 0; i < 3000; i++) {
+                Transaction tx = new Transaction(i + 1, (i % 2 == 0 ? kpAlice : kpBob).getPublic());
+                UTXO utxo = new UTXO(tx.getHash(), 0);
+                utxos.add(utxo);
+                pool.addUTXO(utxo, tx.getOutput(0));
+                heap.addUTXO(utxo, tx.getOutput(0));
+                if (i % 3 == 0) {
+                    pool.removeUTXO(utxos.get(i / 3));
+                    heap.removeUTXO(utxos.get(i / 3));
+                }
+                if (i % 500 == 499) {
+                    pool.checkpoint();
+                    if (before == null)
+                        before = new UTXOPool(pool);
+                }
+                assertEquals(heap.size(), pool.size());
+            }
+            pool.checkpoint();
+            assertEquals(heap.size(), pool.size());
+            assertEquals(333, before.size());
+            assertEquals(333, before.getAllUTXO().size());
+
+            UTXOPool reopened = new UTXOPool(file);
+            assertEquals(heap.size(), reopened.size());
+            assertEquals(new HashSet<UTXO>(heap.getAllUTXO()), new HashSet<UTXO>(reopened.getAllUTXO()));
+            for (UTXO utxo : utxos)
+                assertEquals(heap.getTxOutput(utxo), reopened.getTxOutput(utxo));
+        } finally {
+            deleteStore(file);
+        }
+    }
+
+    /**
+     * Test whether reopening a store left in the middle of a checkpoint finishes the checkpoint from
+     * its journal, and whether a journal that was not completed is ignored.
+     */
+    @Test
+    public void testMappedUTXOPoolRecovery() throws IOException {
+        File file = File.createTempFile("utxo", ".idx");
+        file.delete();
+        File journal = new File(file.getPath() + ".journal");
+        try {
+            MappedUTXOStore store = MappedUTXOStore.open(file);
+            UTXOTrie overlay = UTXOTrie.EMPTY;
+            ArrayList<Transaction> txs = new ArrayList<Transaction>();
+            for (int i = 0; i < 1500; i++) {
+                Transaction tx = new Transaction(i + 1, (i % 2 == 0 ? kpAlice : kpBob).getPublic());
+                txs.add(tx);
+                if (i < 400)
+                    overlay = overlay.put(new UTXO(tx.getHash(), 0), tx.getOutput(0));
+            }
+            store.checkpoint(store.current(), overlay);
+
+            // the process stops after writing the journal of a checkpoint that grows the table
+            overlay = UTXOTrie.EMPTY;
+            for (int i = 0; i < 100; i++)
+                overlay = overlay.put(new UTXO(txs.get(i).getHash(), 0), MappedUTXOStore.TOMBSTONE);
+            for (int i = 400; i < 1500; i++)
+                overlay = overlay.put(new UTXO(txs.get(i).getHash(), 0), txs.get(i).getOutput(0));
+            ArrayList<UTXO> changed = new ArrayList<UTXO>();
+            overlay.collectKeys(changed);
+            store.beginCheckpoint(changed, overlay);
+            assertTrue(journal.exists());
+
+            UTXOPool reopened = new UTXOPool(file);
+            assertFalse(journal.exists());
+            assertEquals(1400, reopened.size());
+            assertEquals(1400, reopened.getAllUTXO().size());
+            for (int i = 0; i < txs.size(); i++) {
+                Transaction.Output out = reopened.getTxOutput(txs.get(i).getHash(), 0);
+                if (i < 100)
+                    assertNull(out);
+                else
+                    assertEquals(txs.get(i).getOutput(0), out);
+            }
+
+            Files.write(journal.toPath(), new byte[] { 0, 0, 0, 5, 1, 2, 3 });
+            reopened = new UTXOPool(file);
+            assertFalse(journal.exists());
+            assertEquals(1400, reopened.size());
+        } finally {
+            deleteStore(file);
+        }
+    }
+
+    /** the equality of UTXOs as the original byte array implementation defined it */
+    private static boolean legacyEquals(byte[] hash1, int index1, byte[] hash2, int index2) {
+        return index1 == index2 && Arrays.equals(hash1, hash2);
+    }
+
+    /** the order of UTXOs as the original byte array implementation defined it */
+    private static int legacyCompare(byte[] hash1, int index1, byte[] hash2, int index2) {
+        if (index2 > index1)
+            return -1;
+        else if (index2 < index1)
+            return 1;
+        if (hash2.length > hash1.length)
+            return -1;
+        else if (hash2.length < hash1.length)
+            return 1;
+        for (int i = 0; i < hash1.length; i++) {
+            if (hash2[i] > hash1[i])
+                return -1;
+            else if (hash2[i] < hash1[i])
+                return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Test that UTXOs with packed transaction hashes compare, order and hash like the byte array
+     * UTXOs they replaced, including hashes that are not 32 bytes long.
+     */
+    @Test
+    public void testUTXOSemantics() {
+        Random random = new Random(42);
+        ArrayList<byte[]> hashes = new ArrayList<byte[]>();
+        byte[] base = new byte[32];
+        random.nextBytes(base);
+        hashes.add(base);
+        for (int i = 0; i < 32; i++) {
+            for (byte b : new byte[] { Byte.MIN_VALUE, -1, 0, 1, Byte.MAX_VALUE }) {
+                byte[] hash = base.clone();
+                hash[i] = b;
+                hashes.add(hash);
+            }
+        }
+        hashes.add(new byte[0]);
+        hashes.add(new byte[] { 1, 2, 3 });
+        hashes.add(Arrays.copyOf(base, 31));
+        hashes.add(Arrays.copyOf(base, 33));
+        int[] indices = { -1, 0, 1, Integer.MAX_VALUE };
+
+        ArrayList<byte[]> keyHashes = new ArrayList<byte[]>();
+        ArrayList<Integer> keyIndices = new ArrayList<Integer>();
+        ArrayList<UTXO> utxos = new ArrayList<UTXO>();
+        for (byte[] hash : hashes) {
+            for (int index : indices) {
+                keyHashes.add(hash);
+                keyIndices.add(index);
+                utxos.add(new UTXO(hash, index));
+            }
+        }
+        for (int i = 0; i < utxos.size(); i++) {
+            UTXO a = utxos.get(i);
+            byte[] hashA = keyHashes.get(i);
+            int indexA = keyIndices.get(i);
+            assertArrayEquals(hashA, a.getTxHash());
+            assertEquals(indexA, a.getIndex());
+            assertTrue(a.matches(hashA, indexA));
+            assertEquals(a.hashCode(), UTXO.hash(hashA, indexA));
+            if (a.isPacked()) {
+                assertEquals(32, hashA.length);
+                UTXO words = new UTXO(a.getTxHashWord(0), a.getTxHashWord(1), a.getTxHashWord(2), a.getTxHashWord(3), indexA);
+                assertEquals(a, words);
+                assertEquals(a.hashCode(), words.hashCode());
+            }
+            for (int j = 0; j < utxos.size(); j++) {
+                UTXO b = utxos.get(j);
+                boolean equal = legacyEquals(hashA, indexA, keyHashes.get(j), keyIndices.get(j));
+                assertEquals(equal, a.equals(b));
+                assertEquals(equal, a.matches(keyHashes.get(j), keyIndices.get(j)));
+                if (equal)
+                    assertEquals(a.hashCode(), b.hashCode());
+                assertEquals(Integer.signum(legacyCompare(hashA, indexA, keyHashes.get(j), keyIndices.get(j))),
+                        Integer.signum(a.compareTo(b)));
+            }
+        }
+        assertEquals(new UTXO(base.clone(), 0), new UTXO(base, 0));
+        assertFalse(new UTXO(base, 0).equals(null));
+    }
+
+    /** Asserts that every encoding of {@code tx} matches the byte by byte encoding of its current contents */
+    private static void assertEncodings(Transaction tx) {
+        for (int i = 0; i < tx.numInputs(); i++)
+            assertArrayEquals(legacyRawDataToSign(tx, i), tx.getRawDataToSign(i));
+        assertArrayEquals(legacyRawTx(tx), tx.getRawTx());
+    }
+
+    /**
+     * Test that changing a transaction after its encodings were read drops the memoized outputs
+     * data, signing preimages and raw tx, so that they are encoded again from the new contents.
+     */
+    @Test
+    public void testEncodingsAfterChanges() throws GeneralSecurityException {
+        Transaction coin = new Transaction(100, kpAlice.getPublic());
+        Transaction tx = new Transaction();
+        tx.addInput(coin.getHash(), 0);
+        tx.addOutput(40, kpBob.getPublic());
+        assertEncodings(tx);
+
+        tx.addOutput(50, kpCal.getPublic());
+        assertEncodings(tx);
+
+        tx.addInput(coin.getHash(), 1);
+        assertEncodings(tx);
+
+        byte[] preimage = tx.getRawDataToSign(0);
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(kpAlice.getPrivate());
+        sig.update(preimage);
+        tx.addSignature(sig.sign(), 0);
+        assertEncodings(tx);
+        assertArrayEquals(preimage, tx.getRawDataToSign(0));
+
+        tx.getInput(1).addSignature(new byte[] { 7, 8, 9 });
+        assertEncodings(tx);
+        tx.addSignature(null, 1);
+        assertEncodings(tx);
+
+        tx.addInput(coin.getHash(), 2);
+        assertEncodings(tx);
+        tx.removeInput(0);
+        assertEncodings(tx);
+        assertEquals(2, tx.numInputs());
+
+        tx.removeInput(new UTXO(coin.getHash(), 2));
+        assertEncodings(tx);
+        assertEquals(1, tx.numInputs());
+
+        // a copy owns its inputs: signing one leaves the other's encodings alone
+        tx.finalize();
+        Transaction copy = new Transaction(tx);
+        byte[] raw = tx.getRawTx();
+        copy.addSignature(new byte[] { 1 }, 0);
+        assertEncodings(copy);
+        assertArrayEquals(raw, tx.getRawTx());
+        assertEncodings(tx);
+    }
+
+    /**
+     * Test that a transaction claiming the hash and signature of a cached one while paying
+     * different outputs is checked against its own content and rejected.
+     */
+    @Test
+    public void testForgedHashMissesSignatureCache() throws GeneralSecurityException {
+        Transaction coin = new Transaction(100, kpAlice.getPublic());
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(coin.getHash(), 0), coin.getOutput(0));
+        SignatureCache cache = new SignatureCache(64);
+        TxHandler txHandler = new TxHandler(utxoPool, null, cache);
+
+        Transaction tx = spend(kpAlice, coin.getHash(), new int[] { 0 }, 60);
+        assertEquals(ValidationResult.VALID, txHandler.validate(tx));
+        assertEquals(1, cache.size());
+
+        Transaction forged = new Transaction();
+        forged.addInput(coin.getHash(), 0);
+        forged.addOutput(60, kpCal.getPublic());
+        forged.addSignature(tx.getInput(0).signature, 0);
+        forged.setHash(tx.getHash());
+        assertFalse(cache.isVerified(forged, 0, coin.getOutput(0)));
+        assertEquals(ValidationResult.BAD_SIGNATURE, txHandler.validate(forged));
+        assertEquals(0, new TxHandler(utxoPool, null, cache).handleTxs(new Transaction[] { forged }).length);
+        assertEquals(1, cache.size());
+    }
+
+    /** @return true if the entries for inputs {@code a} and {@code b} of {@code tx} share a cache segment */
+    private static boolean sameSegment(Transaction tx, Transaction.Output spent, int a, int b) {
+        // with one entry per segment, the second entry evicts the first only from the same segment
+        SignatureCache cache = new SignatureCache(16);
+        cache.markVerified(tx, a, spent);
+        cache.markVerified(tx, b, spent);
+        return !cache.isVerified(tx, a, spent);
+    }
+
+    /**
+     * Test the hit and miss counts of the signature cache, that failures and other spent outputs
+     * are not taken from it, and that each segment evicts its least recently used entry.
+     */
+    @Test
+    public void testSignatureCache() throws GeneralSecurityException {
+        Transaction coin = new Transaction(100, kpAlice.getPublic());
+        Transaction.Output spent = coin.getOutput(0);
+        Transaction tx = spend(kpAlice, coin.getHash(), new int[] { 0 }, 60);
+        SignatureCache cache = new SignatureCache(64);
+
+        assertTrue(cache.verify(tx, 0, spent));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+        assertTrue(cache.verify(tx, 0, spent));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // the entry is for the output the signature was checked against
+        Transaction other = new Transaction(100, kpBob.getPublic());
+        assertFalse(cache.isVerified(tx, 0, other.getOutput(0)));
+        assertFalse(cache.verify(tx, 0, other.getOutput(0)));
+        Transaction more = new Transaction(101, kpAlice.getPublic());
+        assertFalse(cache.isVerified(tx, 0, more.getOutput(0)));
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // failures are verified again every time
+        Transaction forged = spend(kpBob, coin.getHash(), new int[] { 0 }, 60);
+        assertFalse(cache.verify(forged, 0, spent));
+        assertFalse(cache.verify(forged, 0, spent));
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getMisses());
+
+        // an unsigned input bypasses the cache, a changed signature misses the entry
+        Transaction unsigned = new Transaction();
+        unsigned.addInput(coin.getHash(), 0);
+        unsigned.addOutput(60, kpBob.getPublic());
+        unsigned.finalize();
+        cache.markVerified(unsigned, 0, spent);
+        assertFalse(cache.isVerified(unsigned, 0, spent));
+        assertEquals(1, cache.size());
+        byte[] signature = tx.getInput(0).signature.clone();
+        tx.getInput(0).signature[0] ^= 1;
+        assertFalse(cache.isVerified(tx, 0, spent));
+        tx.getInput(0).signature[0] ^= 1;
+        assertArrayEquals(signature, tx.getInput(0).signature);
+        assertTrue(cache.isVerified(tx, 0, spent));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.isVerified(tx, 0, spent));
+        assertEquals(2, cache.getHits());
+
+        // 40 inputs over 16 segments put at least three in one segment
+        Transaction wide = new Transaction();
+        for (int i = 0; i < 40; i++) {
+            wide.addInput(coin.getHash(), i);
+            wide.addSignature(new byte[] { (byte) i }, i);
+        }
+        wide.finalize();
+        int a = -1, b = -1, c = -1;
+        for (int i = 0; i < 40 && c < 0; i++) {
+            b = -1;
+            for (int j = i + 1; j < 40 && c < 0; j++) {
+                if (sameSegment(wide, spent, i, j)) {
+                    if (b < 0)
+                        b = j;
+                    else
+                        c = j;
+                }
+            }
+            a = i;
+        }
+        assertTrue(c >= 0);
+
+        // two entries per segment: touching a makes b the least recently used one
+        SignatureCache lru = new SignatureCache(32);
+        lru.markVerified(wide, a, spent);
+        lru.markVerified(wide, b, spent);
+        assertTrue(lru.isVerified(wide, a, spent));
+        lru.markVerified(wide, c, spent);
+        assertTrue(lru.isVerified(wide, a, spent));
+        assertFalse(lru.isVerified(wide, b, spent));
+        assertTrue(lru.isVerified(wide, c, spent));
+        assertEquals(2, lru.size());
+    }
+
+    /**
+     * Test that verifying a batch of signatures gives each one the result verifySignature gives it,
+     * with valid signatures after bad, malformed and mismatched ones on the same engine.
+     */
+    @Test
+    public void testVerifySignatures() throws GeneralSecurityException {
+        KeyPair[] signers = { kpAlice, kpBob, kpCal };
+        byte[][] messages = new byte[12][];
+        byte[][] signatures = new byte[12][];
+        PublicKey[] keys = new PublicKey[12];
+        for (int i = 0; i < 12; i++) {
+            messages[i] = ("message " + i).getBytes();
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(signers[i % 3].getPrivate());
+            sig.update(messages[i]);
+            signatures[i] = sig.sign();
+            keys[i] = signers[i % 3].getPublic();
+        }
+        keys[1] = kpCal.getPublic();
+        messages[3] = "another message".getBytes();
+        signatures[5] = Arrays.copyOf(signatures[5], 10);
+        signatures[6][0] ^= 1;
+        signatures[8] = new byte[0];
+        signatures[10] = signatures[9];
+        boolean[] expected = { true, false, true, false, true, false, false, true, false, true, false, true };
+
+        boolean[] valid = Crypto.verifySignatures(keys, messages, signatures);
+        for (int i = 0; i < 12; i++) {
+            assertEquals("signature " + i, expected[i], valid[i]);
+            assertEquals("signature " + i, Crypto.verifySignature(keys[i], messages[i], signatures[i]), valid[i]);
+        }
+
+        boolean[] range = new boolean[12];
+        Crypto.verifySignatures(keys, messages, signatures, range, 4, 9);
+        for (int i = 0; i < 12; i++)
+            assertEquals("signature " + i, i >= 4 && i < 9 && expected[i], range[i]);
+    }
+
+    /**
+     * Test the checked and saturated sums and the fee rate comparison against exact arithmetic, at
+     * the bounds of {@code long} and with zero and negative amounts mixed in.
+     */
+    @Test
+    public void testAmounts() {
+        long[] amounts = { Long.MIN_VALUE, Long.MIN_VALUE + 1, -Amounts.COIN, -1, 0, 1, Amounts.COIN,
+                Long.MAX_VALUE / 2, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+        long[] sizes = { 1, 2, 3, 250, Integer.MAX_VALUE, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+        BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        for (long a : amounts) {
+            for (long b : amounts) {
+                BigInteger sum = BigInteger.valueOf(a).add(BigInteger.valueOf(b));
+                BigInteger clamped = sum.max(min).min(max);
+                assertEquals(a + " + " + b, clamped.longValueExact(), Amounts.saturatedAdd(a, b));
+                try {
+                    assertEquals(sum.longValueExact(), Amounts.add(a, b));
+                } catch (ArithmeticException e) {
+                    assertFalse(a + " + " + b, sum.equals(clamped));
+                }
+                for (long sizeA : sizes) {
+                    for (long sizeB : sizes) {
+                        BigInteger left = BigInteger.valueOf(a).multiply(BigInteger.valueOf(sizeB));
+                        BigInteger right = BigInteger.valueOf(b).multiply(BigInteger.valueOf(sizeA));
+                        assertEquals(a + "/" + sizeA + " vs " + b + "/" + sizeB, left.compareTo(right),
+                                Integer.signum(Amounts.compareRates(a, sizeA, b, sizeB)));
+                    }
+                }
+            }
+        }
+        assertEquals(-1, Amounts.saturatedAdd(Long.MAX_VALUE, Long.MIN_VALUE));
+        assertTrue(Amounts.compareRates(0, 1, -1, Long.MAX_VALUE) > 0);
+        assertTrue(Amounts.compareRates(-1, 1, 0, 1) < 0);
+        assertEquals(0, Amounts.compareRates(0, 1, 0, Long.MAX_VALUE));
+    }
+
+    private static void deleteStore(File file) throws IOException {
+        for (String suffix : new String[] { "", ".keys", ".journal", ".tmp" })
+            Files.deleteIfExists(new File(file.getPath() + suffix).toPath());
+    }
+}